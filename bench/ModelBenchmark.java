@@ -0,0 +1,293 @@
+package bench;
+
+import model.Coords;
+import model.IllegalCoordsException;
+import model.Ring;
+import model.RingCalculator;
+import model.RingTables;
+import model.StrongholdSet;
+import model.ThrowMatcher;
+import ui.StrongholdTableModel;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput and allocation benchmarks for the hot paths of the model package and the table population of the
+ * GUI. Every benchmark is run for each Ring, and the ring classification benchmarks are also run in the gaps
+ * between rings where getRing fails and guessRing is needed.
+ * <p>
+ * Each benchmark is warmed up before it is measured, and the allocation rate is read from the JVM's per thread
+ * allocation counter, so a change that starts allocating in the hot path shows up as a jump in B/op. Run with
+ * an optional regular expression to only run the benchmarks whose name contains a match:
+ * <pre>
+ * java -cp out bench.ModelBenchmark "calcStrongholds/.*RING7"
+ * </pre>
+ */
+public class ModelBenchmark {
+    /**
+     * Number of warmup iterations run and thrown away before measuring a benchmark
+     */
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmup", 3);
+    /**
+     * Number of measured iterations of a benchmark
+     */
+    private static final int MEASURE_ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    /**
+     * Length of a single iteration in milliseconds
+     */
+    private static final long ITERATION_MILLIS = Long.getLong("bench.millis", 1000);
+    /**
+     * Number of different inputs each benchmark cycles through, a power of two
+     */
+    private static final int INPUTS = 1024;
+    /**
+     * Distance from the edge of a ring used for the boundary inputs
+     */
+    private static final int BOUNDARY_OFFSET = 16;
+    /**
+     * Results are added to this so the JIT cannot remove the benchmarked code
+     */
+    private static volatile long sink;
+
+    /**
+     * guessRing is an instance method but does not depend on the instance
+     */
+    private static final RingCalculator GUESSER = calculators(Ring.RING1)[0];
+
+    /**
+     * A single named benchmark
+     *
+     * @param name The name of the benchmark, shown in the report and matched by the filter
+     * @param op The operation to measure, given the iteration count and returning a value to consume
+     */
+    private record Benchmark(String name, IntToLongFunction op) {
+    }
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args An optional regular expression to filter the benchmarks by name
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf(Locale.ROOT, "%-44s %16s %12s %10s%n", "Benchmark", "ops/s", "error", "B/op");
+        for (Benchmark b : benchmarks()) {
+            if (filter.matcher(b.name()).find())
+                run(b, threads);
+        }
+    }
+
+    //Builds the list of all benchmarks
+    private static List<Benchmark> benchmarks() {
+        List<Benchmark> list = new ArrayList<>();
+        Ring[] rings = RingTables.current().rings();
+        for (Ring r : rings) {
+            double[][] in = inRing(r);
+            list.add(new Benchmark("getRing/" + r, i -> getRing(in, i)));
+        }
+        for (int n = 0; n < rings.length - 1; n++) {
+            Ring r1 = rings[n];
+            Ring r2 = rings[n + 1];
+            double[][] in = boundary(r1, r2);
+            String name = r1.getRingNum() + "-" + r2.getRingNum();
+            list.add(new Benchmark("getRing/boundary" + name, i -> getRing(in, i)));
+            list.add(new Benchmark("guessRing/boundary" + name, i -> guessRing(in, i)));
+        }
+        for (Ring r : rings) {
+            RingCalculator[] calcs = calculators(r);
+            list.add(new Benchmark("calcStrongholds/overworld/" + r,
+                                   i -> calcs[i & (INPUTS - 1)].calcStrongholds(false).size()));
+            list.add(new Benchmark("calcStrongholds/nether/" + r,
+                                   i -> calcs[i & (INPUTS - 1)].calcStrongholds(true).size()));
+        }
+        Coords[] coords = new Coords[INPUTS];
+        Random rand = new Random(1);
+        for (int i = 0; i < INPUTS; i++) {
+            coords[i] = new Coords(rand.nextInt(50000) - 25000, rand.nextInt(50000) - 25000);
+        }
+        list.add(new Benchmark("Coords/convertNether", i -> {
+            Coords c = coords[i & (INPUTS - 1)];
+            c.convertNether();
+            c.convertOverworld();
+            return (long) c.getX();
+        }));
+        for (Ring r : rings) {
+            RingCalculator[] calcs = calculators(r);
+            StrongholdSet[] sets = new StrongholdSet[INPUTS];
+            for (int i = 0; i < INPUTS; i++) {
+                sets[i] = calcs[i].calcStrongholdSet();
+            }
+            StrongholdTableModel model = new StrongholdTableModel();
+            //filling the model and reading every cell back is the work the table does to show a prediction
+            list.add(new Benchmark("tableModel/" + r, i -> {
+                model.setSet(sets[i & (INPUTS - 1)]);
+                long n = 0;
+                for (int row = 0; row < model.getRowCount(); row++) {
+                    for (int col = 0; col < model.getColumnCount(); col++) {
+                        if (model.getValueAt(row, col) != null)
+                            n++;
+                    }
+                }
+                return n;
+            }));
+            StrongholdTableModel toggled = new StrongholdTableModel();
+            toggled.setSet(sets[0]);
+            //switching dimension and reading every cell back, which should create nothing once both were shown
+            list.add(new Benchmark("tableModel/toggleNether/" + r, i -> {
+                toggled.setNether(!toggled.isNether());
+                long n = 0;
+                for (int row = 0; row < toggled.getRowCount(); row++) {
+                    for (int col = 0; col < toggled.getColumnCount(); col++) {
+                        if (toggled.getValueAt(row, col) != null)
+                            n++;
+                    }
+                }
+                return n;
+            }));
+        }
+        for (Ring r : rings) {
+            RingCalculator calc = calculators(r)[0];
+            StrongholdSet set = calc.calcStrongholdSet();
+            ThrowMatcher matcher = new ThrowMatcher(r, calc.getX() - 4, calc.getZ() - 4, set.slotMask());
+            //a throw from up to 256 blocks away from a prediction toward a point up to 256 blocks from it
+            double[][] throwsIn = new double[INPUTS][];
+            for (int i = 0; i < INPUTS; i++) {
+                long e = set.get(1 + rand.nextInt(r.getNumStrongholds() - 1));
+                double tx = StrongholdSet.blockX(e, false) + rand.nextInt(513) - 256;
+                double tz = StrongholdSet.blockZ(e, false) + rand.nextInt(513) - 256;
+                double px = StrongholdSet.blockX(e, false) + rand.nextInt(513) - 256;
+                double pz = StrongholdSet.blockZ(e, false) + rand.nextInt(513) - 256;
+                throwsIn[i] = new double[]{px, pz, Math.toDegrees(Math.atan2(px - tx, tz - pz))};
+            }
+            list.add(new Benchmark("throwMatcher/" + r, i -> {
+                double[] t = throwsIn[i & (INPUTS - 1)];
+                return matcher.match(t[0], t[1], t[2]).slot();
+            }));
+        }
+        return list;
+    }
+
+    //Runs the warmup and measured iterations of a benchmark and prints the result
+    private static void run(Benchmark b, com.sun.management.ThreadMXBean threads) {
+        long tid = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(b);
+        }
+        double[] rates = new double[MEASURE_ITERATIONS];
+        long ops = 0;
+        long bytes = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long n = iteration(b);
+            rates[i] = n * 1e9 / (System.nanoTime() - start);
+            ops += n;
+        }
+        bytes = threads.getThreadAllocatedBytes(tid) - bytes;
+        double mean = 0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+        double var = 0;
+        for (double r : rates) {
+            var += (r - mean) * (r - mean);
+        }
+        double error = rates.length > 1 ? Math.sqrt(var / (rates.length - 1)) : 0;
+        System.out.printf(Locale.ROOT, "%-44s %16.1f %12.1f %10.1f%n", b.name(), mean, error, (double) bytes / ops);
+    }
+
+    //Runs a benchmark for one iteration and returns the number of operations done
+    private static long iteration(Benchmark b) {
+        long end = System.nanoTime() + ITERATION_MILLIS * 1_000_000;
+        long ops = 0;
+        long acc = 0;
+        //only check the time every 256 operations so the clock is not what gets measured
+        do {
+            for (int i = 0; i < 256; i++) {
+                acc += b.op().applyAsLong((int) ops++);
+            }
+        } while (System.nanoTime() < end);
+        sink += acc;
+        return ops;
+    }
+
+    //getRing for input i, returning 0 if the input is not in a ring
+    private static long getRing(double[][] in, int i) {
+        double[] p = in[i & (INPUTS - 1)];
+        try {
+            return RingCalculator.getRing(p[0], p[1]).getRingNum();
+        } catch (IllegalCoordsException e) {
+            return 0;
+        }
+    }
+
+    //guessRing for input i
+    private static long guessRing(double[][] in, int i) {
+        double[] p = in[i & (INPUTS - 1)];
+        return GUESSER.guessRing(p[0], p[1]).getRingNum();
+    }
+
+    //Random points inside a ring, away from its edges
+    private static double[][] inRing(Ring r) {
+        Random rand = new Random(r.getRingNum());
+        double[][] in = new double[INPUTS][];
+        for (int i = 0; i < INPUTS; i++) {
+            double dist = inner(r) + BOUNDARY_OFFSET + rand.nextDouble() * (outer(r) - inner(r) - 2 * BOUNDARY_OFFSET);
+            in[i] = point(dist, rand.nextDouble() * 2 * Math.PI);
+        }
+        return in;
+    }
+
+    //Random points just outside the outer edge of r1 and just inside the inner edge of r2, alternating so the
+    //benchmark sees both sides of the gap and the exception path of getRing
+    private static double[][] boundary(Ring r1, Ring r2) {
+        Random rand = new Random(r1.getRingNum() * 31L + r2.getRingNum());
+        double[][] in = new double[INPUTS][];
+        for (int i = 0; i < INPUTS; i++) {
+            double edge = (i & 2) == 0 ? outer(r1) : inner(r2);
+            double dist = edge + ((i & 1) == 0 ? BOUNDARY_OFFSET : -BOUNDARY_OFFSET);
+            in[i] = point(dist, rand.nextDouble() * 2 * Math.PI);
+        }
+        return in;
+    }
+
+    //RingCalculators for random points inside a ring
+    private static RingCalculator[] calculators(Ring r) {
+        double[][] in = inRing(r);
+        RingCalculator[] calcs = new RingCalculator[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            try {
+                calcs[i] = new RingCalculator(in[i][0], in[i][1], true);
+            } catch (IllegalCoordsException e) { //cannot happen when ignoring
+                throw new IllegalStateException(e);
+            }
+            calcs[i].setRing(r.getRingNum());
+        }
+        return calcs;
+    }
+
+    //The x and z coordinates at a distance and angle from the origin
+    private static double[] point(double dist, double angle) {
+        return new double[]{Math.round(dist * Math.cos(angle)), Math.round(dist * Math.sin(angle))};
+    }
+
+    //Distance from the origin of the inner edge of a ring
+    private static double inner(Ring r) {
+        return r.getMin();
+    }
+
+    //Distance from the origin of the outer edge of a ring
+    private static double outer(Ring r) {
+        return r.getMax();
+    }
+}
@@ -0,0 +1,226 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long a short lived prediction takes, from starting a new JVM to reading the first prediction it
+ * writes and to the JVM exiting, the way a script or a bot runs {@code cli.Launcher predict}. Every configuration
+ * is run a few times to warm up the file cache and then measured, and the minimum, median and 90th percentile are
+ * reported.
+ * <p>
+ * The plain configuration runs the launcher from the class path of this JVM. The appcds configuration packs the
+ * class path into a jar if it is not one already, since AppCDS only archives classes loaded from jars, makes an
+ * archive with one training run and then runs with it. Before measuring, a run with class loading logged checks
+ * that the prediction never loads AWT or Swing and reports how many classes it loads.
+ * <pre>
+ * java -cp out bench.StartupBenchmark --runs=20 1200 -2300
+ * </pre>
+ */
+public class StartupBenchmark {
+    /**
+     * Number of runs of each configuration thrown away before measuring
+     */
+    private static final int DEFAULT_WARMUP = 3;
+    /**
+     * Number of measured runs of each configuration
+     */
+    private static final int DEFAULT_RUNS = 20;
+    /**
+     * Class that is run in the new JVMs
+     */
+    private static final String LAUNCHER = "cli.Launcher";
+    /**
+     * Tag in front of the class name in each line of the class loading log
+     */
+    private static final String LOAD_TAG = "[class,load] ";
+
+    /**
+     * Times of a single run in milliseconds
+     *
+     * @param first Time from starting the JVM to reading the first line it wrote
+     * @param exit Time from starting the JVM to it exiting
+     */
+    private record Run(double first, double exit) {
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args --runs=, --warmup= and the x and z coordinates of the found stronghold to predict from
+     * @throws IOException If a JVM cannot be started or the jar or archive cannot be written
+     * @throws InterruptedException If interrupted while waiting for a JVM to exit
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = DEFAULT_RUNS;
+        int warmup = DEFAULT_WARMUP;
+        List<String> coords = new ArrayList<>();
+        for (String a : args) {
+            if (a.startsWith("--runs="))
+                runs = Integer.parseInt(a.substring("--runs=".length()));
+            else if (a.startsWith("--warmup="))
+                warmup = Integer.parseInt(a.substring("--warmup=".length()));
+            else
+                coords.add(a);
+        }
+        if (coords.isEmpty())
+            coords = List.of("1200", "-2300");
+        if (coords.size() != 2 || runs < 1 || warmup < 0) {
+            System.err.println("Usage: StartupBenchmark [--runs=N] [--warmup=N] [x z]");
+            System.exit(2);
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String cp = System.getProperty("java.class.path");
+        List<String> predict = new ArrayList<>(List.of(LAUNCHER, "predict"));
+        predict.addAll(coords);
+
+        if (!checkClasses(java, cp, predict))
+            System.exit(1);
+
+        Path tmp = Files.createTempDirectory("startup");
+        try {
+            String jar = jar(cp, tmp);
+            Path archive = tmp.resolve("launcher.jsa");
+            run(command(java, List.of("-XX:ArchiveClassesAtExit=" + archive, "-cp", jar), predict));
+            System.out.printf(Locale.ROOT, "%-10s %12s %12s %12s %12s %12s %12s%n", "Config", "first min",
+                              "first med", "first p90", "exit min", "exit med", "exit p90");
+            report("plain", command(java, List.of("-cp", cp), predict), warmup, runs);
+            report("appcds", command(java, List.of("-XX:SharedArchiveFile=" + archive, "-cp", jar), predict),
+                   warmup, runs);
+        } finally {
+            try (Stream<Path> files = Files.walk(tmp)) {
+                for (Path p : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    //Runs the prediction once with class loading logged, prints how many classes it loaded and whether any were
+    //AWT or Swing
+    private static boolean checkClasses(String java, String cp, List<String> predict) throws IOException,
+                                                                                          InterruptedException {
+        List<String> cmd = command(java, List.of("-Xlog:class+load=info:stdout", "-cp", cp), predict);
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        int loaded = 0, app = 0;
+        List<String> desktop = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(),
+                                                                          StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int i = line.indexOf(LOAD_TAG);
+                if (i < 0)
+                    continue;
+                i += LOAD_TAG.length();
+                String name = line.substring(i, line.indexOf(' ', i));
+                loaded++;
+                if (line.contains("source: file:"))
+                    app++;
+                if (name.startsWith("java.awt.") || name.startsWith("javax.swing.") || name.startsWith("sun.awt."))
+                    desktop.add(name);
+            }
+        }
+        p.waitFor();
+        System.out.printf(Locale.ROOT, "Classes loaded: %d, %d of them from the class path, %d from AWT or Swing%n",
+                          loaded, app, desktop.size());
+        if (!desktop.isEmpty())
+            System.out.println("AWT or Swing was loaded: " + desktop.subList(0, Math.min(desktop.size(), 5)));
+        return desktop.isEmpty();
+    }
+
+    //Runs a configuration and prints its times
+    private static void report(String name, List<String> cmd, int warmup, int runs) throws IOException,
+                                                                                    InterruptedException {
+        for (int i = 0; i < warmup; i++) {
+            run(cmd);
+        }
+        double[] first = new double[runs];
+        double[] exit = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            Run r = run(cmd);
+            first[i] = r.first();
+            exit[i] = r.exit();
+        }
+        Arrays.sort(first);
+        Arrays.sort(exit);
+        System.out.printf(Locale.ROOT, "%-10s %12.1f %12.1f %12.1f %12.1f %12.1f %12.1f%n", name, first[0],
+                          percentile(first, 0.5), percentile(first, 0.9), exit[0], percentile(exit, 0.5),
+                          percentile(exit, 0.9));
+    }
+
+    //Starts a JVM and times it to its first line of output and to exiting
+    private static Run run(List<String> cmd) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        double first = Double.NaN;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(),
+                                                                          StandardCharsets.UTF_8))) {
+            if (in.readLine() != null)
+                first = (System.nanoTime() - start) / 1e6;
+            while (in.readLine() != null) {
+                //drain the rest so the JVM is never blocked writing
+            }
+        }
+        int status = p.waitFor();
+        double exit = (System.nanoTime() - start) / 1e6;
+        if (status != 0 || Double.isNaN(first))
+            throw new IOException("Prediction failed with exit status " + status + ": " + cmd);
+        return new Run(first, exit);
+    }
+
+    //The command to run the JVM with some options and the launcher's arguments
+    private static List<String> command(String java, List<String> options, List<String> predict) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(java);
+        cmd.addAll(options);
+        cmd.addAll(predict);
+        return cmd;
+    }
+
+    //The class path as a single jar, packing the directories in it into a new jar in tmp if it is not one already
+    private static String jar(String cp, Path tmp) throws IOException {
+        String[] entries = cp.split(File.pathSeparator);
+        if (entries.length == 1 && entries[0].endsWith(".jar"))
+            return cp;
+        Path jar = tmp.resolve("launcher.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            Set<String> added = new HashSet<>();
+            for (String e : entries) {
+                Path dir = Path.of(e);
+                if (!Files.isDirectory(dir))
+                    throw new IOException("Only a single jar or directories are supported on the class path: " + e);
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path f : files.filter(Files::isRegularFile).toList()) {
+                        String name = dir.relativize(f).toString().replace(File.separatorChar, '/');
+                        //the first directory with a class wins, the same as on the class path
+                        if (!added.add(name))
+                            continue;
+                        out.putNextEntry(new JarEntry(name));
+                        Files.copy(f, out);
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+        return jar.toString();
+    }
+
+    //The value at a fraction of the way through sorted values
+    private static double percentile(double[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
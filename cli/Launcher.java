@@ -0,0 +1,100 @@
+package cli;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single entry point for every way of running the calculator that never loads AWT or Swing itself. The window is
+ * only loaded by name when it is asked for, so predicting from a script or a bot only loads the model classes and
+ * the command line version, and the JVM can exit within tens of milliseconds of starting.
+ * <p>
+ * The classes loaded to make a prediction are the same on every run, which makes the launcher a good fit for an
+ * AppCDS archive of them. Packed into a jar (AppCDS only archives classes loaded from jars), the archive is made
+ * by running a prediction once with {@code -XX:ArchiveClassesAtExit} and used with {@code -XX:SharedArchiveFile}:
+ * <pre>
+ * jar cfe stronghold.jar cli.Launcher -C out .
+ * java -XX:ArchiveClassesAtExit=stronghold.jsa -jar stronghold.jar predict 1200 -2300
+ * java -XX:SharedArchiveFile=stronghold.jsa -jar stronghold.jar predict 1200 -2300
+ * </pre>
+ * {@code bench.StartupBenchmark} measures the time from starting the JVM to the first prediction with and without
+ * the archive.
+ */
+public final class Launcher {
+    /**
+     * Usage message for when the arguments are not valid
+     */
+    private static final String USAGE = """
+                                        Usage: Launcher [gui | predict <x> <z> [options] | cli [options] [file] | server [port]]
+                                          gui       open the window, the default
+                                          predict   calculate the strongholds for one found stronghold, takes
+                                                    the same options as cli
+                                          cli       calculate the strongholds for every line of a file or
+                                                    standard input, see StrongholdCLI
+                                          server    serve the calculations over HTTP, see PredictionServer
+                                        """;
+    /**
+     * Name of the class of the window, loaded only when it is asked for
+     */
+    private static final String GUI = "ui.RingCalculatorGUI";
+
+    private Launcher() {
+    }
+
+    /**
+     * Runs the command given as the first argument
+     *
+     * @param args The command followed by its arguments
+     * @throws Exception If the server or the window cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "gui";
+        String[] rest = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+        switch (command) {
+            case "predict" -> predict(rest);
+            case "cli" -> StrongholdCLI.main(rest);
+            case "server" -> server.PredictionServer.main(rest);
+            case "gui" -> gui(rest);
+            default -> usage("Unknown command " + command);
+        }
+    }
+
+    //Calculates the strongholds for the coordinates in the first two arguments, the rest are options of the CLI
+    private static void predict(String[] args) {
+        if (args.length < 2)
+            usage("predict needs the x and z coordinates of the found stronghold");
+        //only plain numbers, anything else would be read as one of the line formats of the CLI
+        for (int i = 0; i < 2; i++) {
+            try {
+                Double.parseDouble(args[i]);
+            } catch (NumberFormatException e) {
+                usage("Invalid coordinate " + args[i]);
+            }
+        }
+        //concatenated by hand, the + operator bootstraps StringConcatFactory which takes longer than a prediction
+        StringBuilder line = new StringBuilder(args[0].length() + args[1].length() + 2);
+        line.append(args[0]).append(',').append(args[1]).append('\n');
+        StrongholdCLI.run(Arrays.copyOfRange(args, 2, args.length),
+                          line.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    //Loads the window by name so its classes are not needed for the other commands
+    private static void gui(String[] args) throws Exception {
+        Method main = Class.forName(GUI).getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    //Prints an error and the usage message and exits
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.print(USAGE);
+        System.exit(2);
+    }
+}
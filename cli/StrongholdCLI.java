@@ -0,0 +1,541 @@
+package cli;
+
+import metrics.Metrics;
+import model.ProjectionKernel;
+import model.Ring;
+import model.RingCalculator;
+import model.RingTables;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Headless command line version of the calculator for batch jobs. Reads the coordinates of found strongholds one
+ * per line and writes the predicted strongholds for each line as soon as they are calculated, so the memory used
+ * does not depend on the size of the input.
+ * <p>
+ * Each input line can be any of:
+ * <ul>
+ *     <li>CSV with the x and z coordinates, or x, y and z coordinates, such as {@code 1200,-2300}</li>
+ *     <li>A JSON object with "x" and "z" keys, such as {@code {"x": 1200, "z": -2300}}</li>
+ *     <li>The XYZ line of the F3 screen, such as {@code XYZ: 1200.500 / 40.00000 / -2300.500}</li>
+ * </ul>
+ * Numbers can have a fraction and an exponent, such as {@code 1.2e3}. Blank lines, lines starting with # and lines
+ * that start with text before any number (such as a CSV header) are skipped. Any other line that does not give two
+ * coordinates, such as one with text or a fourth number after the numbers, is written as a failure.
+ * <p>
+ * Lines are parsed straight from the input bytes and collected into blocks that are calculated with the batch
+ * calculation of RingCalculator, so very little is allocated per line.
+ */
+public class StrongholdCLI {
+    /**
+     * Usage message for when the arguments are not valid
+     */
+    private static final String USAGE = """
+                                        Usage: StrongholdCLI [--nether] [--fallback=skip|guess|ring:N] [--format=csv|jsonl] [--metrics=text|json] [file]
+                                          --nether     output nether coordinates
+                                          --fallback   what to do when a stronghold is not in a ring:
+                                                       skip (default) fails the line, guess uses the most
+                                                       likely ring, ring:N always uses ring N
+                                          --format     output format, csv (default) or jsonl
+                                          --metrics    print metrics to standard error when done, needs
+                                                       -Dstronghold.metrics=true
+                                          file         file to read, standard input if not given or -
+                                        """;
+    /**
+     * Number of input rows collected before they are calculated together
+     */
+    private static final int BLOCK_ROWS = 4096;
+    /**
+     * Size of the input and output buffers
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Most numbers read from a single line
+     */
+    private static final int MAX_NUMBERS = 3;
+    /**
+     * The rings in order, kept since values() copies the array every call
+     */
+    private static final Ring[] RINGS = Ring.values();
+
+    /**
+     * What to do with a found stronghold that is not in a ring
+     */
+    public enum Fallback {
+        /**
+         * Report the line as failed
+         */
+        SKIP,
+        /**
+         * Guess the ring, the most likely ring the same as the GUI picks
+         */
+        GUESS,
+        /**
+         * Use a ring chosen ahead of time, like picking a ring in the GUI
+         */
+        RING
+    }
+
+    /**
+     * Whether to output nether coordinates
+     */
+    private final boolean nether;
+    /**
+     * What to do with a found stronghold that is not in a ring
+     */
+    private final Fallback fallback;
+    /**
+     * Ring to use when the fallback is RING
+     */
+    private final Ring manualRing;
+    /**
+     * Whether to output JSON Lines instead of CSV
+     */
+    private final boolean json;
+    /**
+     * Coordinates of the buffered rows that could be parsed, waiting to be calculated
+     */
+    private final double[] xs = new double[BLOCK_ROWS], zs = new double[BLOCK_ROWS];
+    /**
+     * Input line number of each buffered row
+     */
+    private final long[] lines = new long[BLOCK_ROWS];
+    /**
+     * Index in xs and zs of each buffered row, -1 for a line that could not be parsed, which is kept in the block
+     * so the output stays in the same order as the input but is never calculated
+     */
+    private final int[] slots = new int[BLOCK_ROWS];
+    /**
+     * Ring of each calculated row, indexed the same as xs and zs
+     */
+    private final int[] rings = new int[BLOCK_ROWS];
+    /**
+     * Predictions of each calculated row, MAX_PREDICTIONS per row indexed the same as xs and zs
+     */
+    private final double[] outX = new double[BLOCK_ROWS * RingCalculator.MAX_PREDICTIONS],
+            outZ = new double[BLOCK_ROWS * RingCalculator.MAX_PREDICTIONS];
+    /**
+     * Numbers parsed from the current line
+     */
+    private final double[] numbers = new double[MAX_NUMBERS];
+    /**
+     * Number of buffered rows
+     */
+    private int rows;
+    /**
+     * Number of buffered rows that could be parsed
+     */
+    private int readable;
+    /**
+     * Output buffer, written to the output stream when full
+     */
+    private final byte[] out = new byte[BUFFER_SIZE];
+    /**
+     * Number of bytes in the output buffer
+     */
+    private int outLen;
+    /**
+     * Stream the output is written to
+     */
+    private final OutputStream os;
+    /**
+     * Number of lines that could not be calculated, either because they could not be parsed or were not in a ring
+     */
+    private long failed;
+
+    /**
+     * Creates a CLI that writes to the given stream
+     *
+     * @param os The stream to write the predictions to
+     * @param nether Whether to output nether coordinates
+     * @param fallback What to do with a found stronghold that is not in a ring
+     * @param manualRing Ring to use when the fallback is RING, ignored otherwise
+     * @param json Whether to output JSON Lines instead of CSV
+     * @throws IllegalArgumentException If the fallback is RING and no ring is given
+     */
+    public StrongholdCLI(OutputStream os, boolean nether, Fallback fallback, Ring manualRing, boolean json) {
+        if (fallback == Fallback.RING && manualRing == null)
+            throw new IllegalArgumentException("A ring is needed for the ring fallback");
+        this.os = os;
+        this.nether = nether;
+        this.fallback = fallback;
+        this.manualRing = manualRing;
+        this.json = json;
+    }
+
+    /**
+     * Reads every line of the input and writes the predictions for it
+     *
+     * @param in The stream to read found strongholds from
+     * @return The number of lines that could not be calculated
+     * @throws IOException If the input cannot be read or the output cannot be written
+     */
+    public long run(InputStream in) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int len = 0;
+        long line = 0;
+        int n;
+        while ((n = in.read(buf, len, buf.length - len)) != -1) {
+            len += n;
+            int start = 0;
+            for (int i = start; i < len; i++) {
+                if (buf[i] == '\n') {
+                    line(buf, start, i, ++line);
+                    start = i + 1;
+                }
+            }
+            //move the incomplete last line to the front
+            System.arraycopy(buf, start, buf, 0, len - start);
+            len -= start;
+            if (len == buf.length)
+                throw new IOException("Line " + (line + 1) + " is longer than " + buf.length + " bytes");
+        }
+        if (len > 0)
+            line(buf, 0, len, ++line);
+        flushRows();
+        os.write(out, 0, outLen);
+        outLen = 0;
+        os.flush();
+        return failed;
+    }
+
+    //Parses a line and buffers it as a row, calculating the buffered rows once the block is full
+    private void line(byte[] b, int from, int to, long line) throws IOException {
+        if (to > from && b[to - 1] == '\r')
+            to--;
+        while (from < to && (b[from] == ' ' || b[from] == '\t'))
+            from++;
+        if (from == to || b[from] == '#')
+            return;
+        int count = b[from] == '{' ? parseJson(b, from, to) : parseNumbers(b, from, to);
+        if (count == 0) //header or other text
+            return;
+        if (count < 2 || !Double.isFinite(numbers[0]) || !Double.isFinite(numbers[count == 2 ? 1 : 2])) {
+            slots[rows] = -1;
+        } else {
+            xs[readable] = numbers[0];
+            zs[readable] = numbers[count == 2 ? 1 : 2];
+            slots[rows] = readable++;
+        }
+        lines[rows++] = line;
+        if (rows == BLOCK_ROWS)
+            flushRows();
+    }
+
+    //Calculates the buffered rows and writes their predictions
+    private void flushRows() throws IOException {
+        if (rows == 0)
+            return;
+        double[] x = xs, z = zs;
+        if (readable < BLOCK_ROWS) {
+            x = Arrays.copyOf(xs, readable);
+            z = Arrays.copyOf(zs, readable);
+        }
+        //one read of the ring tables for the whole block, so the rows are written with the sizes they were made with
+        RingTables t = RingTables.current();
+        if (readable > 0)
+            RingCalculator.calcStrongholds(t, x, z, nether, fallback == Fallback.GUESS, rings, outX, outZ);
+        for (int i = 0; i < rows; i++) {
+            int j = slots[i];
+            if (j < 0) {
+                failed++;
+                writeFailure(lines[i], "could not read coordinates");
+                continue;
+            }
+            int off = j * RingCalculator.MAX_PREDICTIONS;
+            if (rings[j] == 0 && fallback == Fallback.RING) {
+                ProjectionKernel.project(t, manualRing, xs[j] + 4, zs[j] + 4, nether, outX, outZ, off);
+                rings[j] = manualRing.getRingNum();
+                if (Metrics.ENABLED)
+                    Metrics.fallback(Metrics.Fallback.MANUAL, rings[j]);
+            }
+            if (rings[j] == 0) {
+                failed++;
+                writeFailure(lines[i], "not inside of a Stronghold Ring");
+                continue;
+            }
+            writeRow(lines[i], rings[j], t.getNumStrongholds(RINGS[rings[j] - 1]) - 1, off);
+        }
+        rows = 0;
+        readable = 0;
+    }
+
+    //Writes the predictions of a row
+    private void writeRow(long line, int ring, int count, int off) throws IOException {
+        ensure(64 + count * 26);
+        if (json) {
+            ascii("{\"line\":");
+            number(line);
+            ascii(",\"ring\":");
+            number(ring);
+            ascii(",\"predictions\":[");
+            for (int k = 0; k < count; k++) {
+                if (k > 0)
+                    out[outLen++] = ',';
+                out[outLen++] = '[';
+                number((long) outX[off + k]);
+                out[outLen++] = ',';
+                number((long) outZ[off + k]);
+                out[outLen++] = ']';
+            }
+            ascii("]}\n");
+        } else {
+            number(line);
+            out[outLen++] = ',';
+            number(ring);
+            for (int k = 0; k < count; k++) {
+                out[outLen++] = ',';
+                number((long) outX[off + k]);
+                out[outLen++] = ',';
+                number((long) outZ[off + k]);
+            }
+            out[outLen++] = '\n';
+        }
+    }
+
+    //Writes a line that could not be calculated, a ring of 0 in CSV
+    private void writeFailure(long line, String msg) throws IOException {
+        ensure(64 + msg.length());
+        if (json) {
+            ascii("{\"line\":");
+            number(line);
+            ascii(",\"error\":\"");
+            ascii(msg);
+            ascii("\"}\n");
+        } else {
+            number(line);
+            ascii(",0\n");
+        }
+    }
+
+    //Makes sure the output buffer has room for n more bytes
+    private void ensure(int n) throws IOException {
+        if (outLen + n > out.length) {
+            os.write(out, 0, outLen);
+            outLen = 0;
+        }
+    }
+
+    //Appends an ASCII string to the output buffer
+    private void ascii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            out[outLen++] = (byte) s.charAt(i);
+        }
+    }
+
+    //Appends a whole number to the output buffer
+    private void number(long v) {
+        if (v < 0) {
+            out[outLen++] = '-';
+            v = -v;
+        }
+        int start = outLen;
+        do {
+            out[outLen++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        //digits were written backwards
+        for (int i = start, j = outLen - 1; i < j; i++, j--) {
+            byte t = out[i];
+            out[i] = out[j];
+            out[j] = t;
+        }
+    }
+
+    //Reads up to MAX_NUMBERS numbers from the line in order, returns how many were read, 0 if the line starts with
+    //text and 1 if text or more numbers follow them
+    private int parseNumbers(byte[] b, int from, int to) {
+        int count = 0;
+        int i = from;
+        while (i < to && count < MAX_NUMBERS) {
+            byte c = b[i];
+            boolean sign = (c == '-' || c == '+') && i + 1 < to && isDigit(b[i + 1]);
+            if (isDigit(c) || sign) {
+                i = parseNumber(b, i, to, count++);
+            } else if (isXyzLabel(b, i, to)) {
+                i += 4;
+            } else if (isLetter(c)) {
+                //text other than the F3 label is a header before any number, and a line that cannot be read after
+                return count == 0 ? 0 : 1;
+            } else {
+                i++;
+            }
+        }
+        //only separators can follow the last number, a fourth number or trailing text makes the line unreadable
+        for (; i < to; i++) {
+            if (isDigit(b[i]) || isLetter(b[i]))
+                return 1;
+        }
+        return count;
+    }
+
+    //Reads the numbers of the "x" and "z" keys of a JSON object, returns 2 if both were found
+    private int parseJson(byte[] b, int from, int to) {
+        boolean x = false, z = false;
+        for (int i = from; i + 2 < to; i++) {
+            if (b[i] != '"')
+                continue;
+            if (b[i + 2] != '"' || (b[i + 1] != 'x' && b[i + 1] != 'z')) {
+                i = skipString(b, i, to);
+                continue;
+            }
+            byte key = b[i + 1];
+            int j = i + 3;
+            while (j < to && b[j] == ' ')
+                j++;
+            if (j == to || b[j] != ':') { //a string value, not a key
+                i += 2;
+                continue;
+            }
+            j++;
+            while (j < to && b[j] == ' ')
+                j++;
+            if (j == to || !(isDigit(b[j]) || b[j] == '-' || b[j] == '+'))
+                return 1;
+            if (key == 'x') {
+                i = parseNumber(b, j, to, 0) - 1;
+                x = true;
+            } else {
+                i = parseNumber(b, j, to, 1) - 1;
+                z = true;
+            }
+        }
+        return x && z ? 2 : 1;
+    }
+
+    //Index of the closing quote of the JSON string starting at i, or the end of the line
+    private static int skipString(byte[] b, int i, int to) {
+        for (i++; i < to; i++) {
+            if (b[i] == '\\')
+                i++;
+            else if (b[i] == '"')
+                return i;
+        }
+        return to;
+    }
+
+    //Parses a number starting at i into numbers[index] and returns the index after it
+    private int parseNumber(byte[] b, int i, int to, int index) {
+        boolean neg = b[i] == '-';
+        if (b[i] == '-' || b[i] == '+')
+            i++;
+        double v = 0;
+        while (i < to && isDigit(b[i])) {
+            v = v * 10 + (b[i++] - '0');
+        }
+        if (i < to && b[i] == '.') {
+            i++;
+            double scale = 1;
+            while (i < to && isDigit(b[i])) {
+                v = v * 10 + (b[i++] - '0');
+                scale *= 10;
+            }
+            v /= scale;
+        }
+        //an exponent, only taken when digits follow so 1e is left for the caller to reject as text
+        if (i + 1 < to && (b[i] == 'e' || b[i] == 'E')) {
+            int j = i + 1;
+            boolean negExp = b[j] == '-';
+            if (b[j] == '-' || b[j] == '+')
+                j++;
+            if (j < to && isDigit(b[j])) {
+                int exp = 0;
+                while (j < to && isDigit(b[j])) {
+                    exp = Math.min(exp * 10 + (b[j++] - '0'), 400);
+                }
+                v *= Math.pow(10, negExp ? -exp : exp);
+                i = j;
+            }
+        }
+        numbers[index] = neg ? -v : v;
+        return i;
+    }
+
+    //Whether the letters at i are the XYZ label of the F3 screen
+    private static boolean isXyzLabel(byte[] b, int i, int to) {
+        return i + 3 < to && b[i] == 'X' && b[i + 1] == 'Y' && b[i + 2] == 'Z' && b[i + 3] == ':';
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Runs the CLI with the given arguments
+     *
+     * @param args Arguments to be passed from command line
+     */
+    public static void main(String[] args) {
+        run(args, null);
+    }
+
+    /**
+     * Runs the CLI with the given arguments, reading the given input instead of a file or standard input if it is
+     * not null. Exits the JVM if the arguments are not valid or the input cannot be read.
+     *
+     * @param args Arguments to be passed from command line
+     * @param input Input to read, such as a single line from {@link Launcher}, or null
+     */
+    static void run(String[] args, byte[] input) {
+        boolean nether = false;
+        boolean json = false;
+        Fallback fallback = Fallback.SKIP;
+        Ring ring = null;
+        String metrics = null;
+        String file = null;
+        try {
+            for (String a : args) {
+                if (a.equals("--nether")) {
+                    nether = true;
+                } else if (a.equals("--format=csv")) {
+                    json = false;
+                } else if (a.equals("--format=jsonl")) {
+                    json = true;
+                } else if (a.equals("--fallback=skip")) {
+                    fallback = Fallback.SKIP;
+                } else if (a.equals("--fallback=guess")) {
+                    fallback = Fallback.GUESS;
+                } else if (a.startsWith("--fallback=ring:")) {
+                    int n = Integer.parseInt(a.substring("--fallback=ring:".length()));
+                    fallback = Fallback.RING;
+                    ring = Ring.fromNumber(n);
+                } else if (a.equals("--metrics=text") || a.equals("--metrics=json")) {
+                    metrics = a.substring("--metrics=".length());
+                } else if (!a.startsWith("--") && file == null && input == null) {
+                    file = a;
+                } else {
+                    throw new IllegalArgumentException("Unknown argument " + a);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+        OutputStream os = new FileOutputStream(FileDescriptor.out);
+        StrongholdCLI cli = new StrongholdCLI(os, nether, fallback, ring, json);
+        try (InputStream in = input != null ? new ByteArrayInputStream(input)
+                              : file == null || file.equals("-") ? new FileInputStream(FileDescriptor.in)
+                                                                 : new FileInputStream(file)) {
+            long failed = cli.run(in);
+            if (failed > 0)
+                System.err.println(failed + " line(s) could not be calculated");
+            if (metrics != null)
+                System.err.print(metrics.equals("json") ? Metrics.dumpJson() + "\n" : Metrics.dumpText());
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
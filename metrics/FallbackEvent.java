@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for coordinates outside of every ring that were given a ring anyway
+ */
+@Name("stronghold.Fallback")
+@Label("Ring Fallback")
+@Category("Stronghold Calculator")
+@Description("Coordinates outside of every ring were given a ring by guessing or by the user")
+@StackTrace(false)
+class FallbackEvent extends Event {
+    /**
+     * How the ring was picked, guess or manual
+     */
+    @Label("Kind")
+    String kind;
+    /**
+     * Number of the ring that was picked
+     */
+    @Label("Ring")
+    int ring;
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for coordinates found not to be inside of any ring, with the stack trace of the caller
+ */
+@Name("stronghold.IllegalCoords")
+@Label("Illegal Coordinates")
+@Category("Stronghold Calculator")
+@Description("An IllegalCoordsException was thrown")
+class IllegalCoordsEvent extends Event {
+    /**
+     * The x coordinate that was not in a ring
+     */
+    @Label("X")
+    double x;
+    /**
+     * The z coordinate that was not in a ring
+     */
+    @Label("Z")
+    double z;
+}
@@ -0,0 +1,137 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds that any number of threads can record into at once. Buckets are
+ * log-linear: every power of two is split into four buckets, so a percentile read from the histogram is within 25%
+ * of the real value from one nanosecond up to the longest time a long can hold.
+ */
+public class LatencyHistogram {
+    /**
+     * Buckets each power of two is split into, as a number of bits
+     */
+    private static final int SUB_BITS = 2;
+    /**
+     * Number of buckets, four for each of the 64 powers of two
+     */
+    private static final int BUCKETS = 64 << SUB_BITS;
+    /**
+     * Count of each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of values recorded
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Sum of the values recorded
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * Largest value recorded
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value
+     *
+     * @param nanos The value in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Gets the number of values recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the values recorded in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the mean of the values recorded in nanoseconds, 0 if there are none
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the largest value recorded in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the values recorded
+     *
+     * @param p The percentile between 0 and 1
+     * @return The upper edge in nanoseconds of the bucket the percentile falls in, capped at the largest value, 0 if
+     * nothing has been recorded
+     */
+    public long percentile(double p) {
+        long[] snap = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snap[i] = counts.get(i);
+            total += snap[i];
+        }
+        if (total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= target)
+                return Math.min(upper(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is being cleared may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    //Values below 4 get a bucket each, after that the highest bit picks the power of two and the next two bits
+    //pick the quarter of it
+    private static int bucket(long v) {
+        if (v < (1 << SUB_BITS))
+            return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return ((msb - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    //Largest value that falls in a bucket
+    private static long upper(int b) {
+        if (b < (1 << SUB_BITS))
+            return b;
+        int msb = (b >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = b & ((1 << SUB_BITS) - 1);
+        long lower = (1L << msb) + ((long) sub << (msb - SUB_BITS));
+        return lower + (1L << (msb - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,321 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, latency histograms and Flight Recorder events for the hot paths of the model package. Metrics are off
+ * unless the program is started with {@code -Dstronghold.metrics=true}. ENABLED is a constant, so when it is false
+ * the JIT removes every {@code if (Metrics.ENABLED)} block and the instrumented code runs as if it was not there.
+ * <p>
+ * When enabled every operation records its latency into a histogram, the predicting operations also record how
+ * many bytes the calling thread allocated, and each ring fallback is counted by ring. The same data is sent to
+ * Flight Recorder as stronghold.* events whenever a recording is running. {@link #dumpText()} and
+ * {@link #dumpJson()} give a snapshot of everything recorded so far.
+ */
+public final class Metrics {
+    /**
+     * Whether metrics are recorded, read once from the stronghold.metrics system property
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("stronghold.metrics");
+
+    /**
+     * The instrumented operations
+     */
+    public enum Op {
+        GET_RING("getRing"),
+        GUESS_RING("guessRing"),
+        CALC_STRONGHOLDS("calcStrongholds"),
+        CALC_STRONGHOLD_SET("calcStrongholdSet"),
+        CALC_BATCH("calcStrongholds/batch"),
+        CLASSIFY("classify");
+
+        /**
+         * Name of the operation in dumps and events
+         */
+        private final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the name of the operation in dumps and events
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * How a ring was picked for coordinates outside of every ring
+     */
+    public enum Fallback {GUESS, MANUAL}
+
+    /**
+     * The operations, kept since values() copies the array every call
+     */
+    private static final Op[] OPS = Op.values();
+    /**
+     * When metrics were started or last reset, in nanoseconds
+     */
+    private static volatile long since = System.nanoTime();
+
+    private Metrics() {
+    }
+
+    /**
+     * Holds the counters, so they are only created once something is recorded or read and a program that runs
+     * with metrics off does not pay for them at startup
+     */
+    private static final class Counters {
+        /**
+         * Latency of each operation, indexed by Op ordinal
+         */
+        private static final LatencyHistogram[] LATENCY = new LatencyHistogram[OPS.length];
+        /**
+         * Bytes allocated by each operation, indexed by Op ordinal
+         */
+        private static final LongAdder[] ALLOCATED = new LongAdder[OPS.length];
+        /**
+         * Number of times each operation had its allocation measured, indexed by Op ordinal
+         */
+        private static final LongAdder[] ALLOCATIONS = new LongAdder[OPS.length];
+        /**
+         * Fallback counts indexed by Fallback ordinal * 8 + ring number - 1
+         */
+        private static final LongAdder[] FALLBACKS = new LongAdder[Fallback.values().length * 8];
+        /**
+         * Number of IllegalCoordsExceptions thrown
+         */
+        private static final LongAdder ILLEGAL_COORDS = new LongAdder();
+
+        static {
+            for (int i = 0; i < OPS.length; i++) {
+                LATENCY[i] = new LatencyHistogram();
+                ALLOCATED[i] = new LongAdder();
+                ALLOCATIONS[i] = new LongAdder();
+            }
+            for (int i = 0; i < FALLBACKS.length; i++) {
+                FALLBACKS[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Holds the thread bean, so the management classes are only loaded once allocation is first measured
+     */
+    private static final class Alloc {
+        /**
+         * Measures the bytes allocated by a thread, null if the JVM cannot
+         */
+        private static final com.sun.management.ThreadMXBean THREADS = threads();
+    }
+
+    /**
+     * Gets the time an operation starts, for {@link #record}. Only call when ENABLED.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Gets the bytes the current thread has allocated so far, for {@link #record}. Only call when ENABLED.
+     *
+     * @return The bytes allocated, 0 if the JVM cannot measure them
+     */
+    public static long allocated() {
+        return Alloc.THREADS == null ? 0 : Alloc.THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Records an operation that finished. Only call when ENABLED.
+     *
+     * @param op The operation
+     * @param ring The number of the ring the operation used, 0 if there was none
+     * @param start The time from {@link #start()}
+     */
+    public static void record(Op op, int ring, long start) {
+        record(op, ring, start, -1);
+    }
+
+    /**
+     * Records an operation that finished along with the bytes it allocated. Only call when ENABLED.
+     *
+     * @param op The operation
+     * @param ring The number of the ring the operation used, 0 if there was none
+     * @param start The time from {@link #start()}
+     * @param allocStart The bytes from {@link #allocated()} when the operation started, -1 to not record them
+     */
+    public static void record(Op op, int ring, long start, long allocStart) {
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocStart < 0 ? 0 : allocated() - allocStart;
+        Counters.LATENCY[op.ordinal()].record(elapsed);
+        if (allocStart >= 0 && Alloc.THREADS != null) {
+            Counters.ALLOCATED[op.ordinal()].add(bytes);
+            Counters.ALLOCATIONS[op.ordinal()].increment();
+        }
+        OperationEvent e = new OperationEvent();
+        if (e.isEnabled()) {
+            e.operation = op.getLabel();
+            e.ring = ring;
+            e.elapsed = elapsed;
+            e.allocated = bytes;
+            e.commit();
+        }
+    }
+
+    /**
+     * Records that coordinates outside of every ring were given a ring anyway. Only call when ENABLED.
+     *
+     * @param kind How the ring was picked
+     * @param ring The number of the ring that was picked, 1 to 8
+     */
+    public static void fallback(Fallback kind, int ring) {
+        Counters.FALLBACKS[kind.ordinal() * 8 + ring - 1].increment();
+        FallbackEvent e = new FallbackEvent();
+        if (e.isEnabled()) {
+            e.kind = kind.name().toLowerCase(Locale.ROOT);
+            e.ring = ring;
+            e.commit();
+        }
+    }
+
+    /**
+     * Records that an IllegalCoordsException was thrown. Only call when ENABLED.
+     *
+     * @param x The x coordinate that was not in a ring
+     * @param z The z coordinate that was not in a ring
+     */
+    public static void illegalCoords(double x, double z) {
+        Counters.ILLEGAL_COORDS.increment();
+        IllegalCoordsEvent e = new IllegalCoordsEvent();
+        if (e.isEnabled()) {
+            e.x = x;
+            e.z = z;
+            e.commit();
+        }
+    }
+
+    /**
+     * Gets the latency histogram of an operation
+     */
+    public static LatencyHistogram getLatency(Op op) {
+        return Counters.LATENCY[op.ordinal()];
+    }
+
+    /**
+     * Gets the number of times a ring was picked by a kind of fallback
+     *
+     * @param kind How the ring was picked
+     * @param ring The number of the ring, 1 to 8
+     */
+    public static long getFallbacks(Fallback kind, int ring) {
+        return Counters.FALLBACKS[kind.ordinal() * 8 + ring - 1].sum();
+    }
+
+    /**
+     * Gets the number of IllegalCoordsExceptions thrown
+     */
+    public static long getIllegalCoords() {
+        return Counters.ILLEGAL_COORDS.sum();
+    }
+
+    /**
+     * Clears everything recorded
+     */
+    public static void reset() {
+        for (int i = 0; i < OPS.length; i++) {
+            Counters.LATENCY[i].reset();
+            Counters.ALLOCATED[i].reset();
+            Counters.ALLOCATIONS[i].reset();
+        }
+        for (LongAdder a : Counters.FALLBACKS) {
+            a.reset();
+        }
+        Counters.ILLEGAL_COORDS.reset();
+        since = System.nanoTime();
+    }
+
+    /**
+     * Gives everything recorded as a table for people to read
+     */
+    public static String dumpText() {
+        if (!ENABLED)
+            return "Metrics are disabled, start with -Dstronghold.metrics=true\n";
+        double seconds = Math.max(1e-9, (System.nanoTime() - since) / 1e9);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-24s %10s %10s %9s %9s %9s %9s %9s %9s%n", "Operation", "count",
+                                "ops/s", "mean ns", "p50 ns", "p99 ns", "p99.9 ns", "max ns", "B/op"));
+        for (Op op : OPS) {
+            LatencyHistogram h = Counters.LATENCY[op.ordinal()];
+            sb.append(String.format(Locale.ROOT, "%-24s %10d %10.1f %9.0f %9d %9d %9d %9d %9s%n", op.getLabel(),
+                                    h.getCount(), h.getCount() / seconds, h.getMean(), h.percentile(0.5),
+                                    h.percentile(0.99), h.percentile(0.999), h.getMax(), bytesPerOp(op)));
+        }
+        sb.append("IllegalCoordsExceptions: ").append(Counters.ILLEGAL_COORDS.sum()).append('\n');
+        for (Fallback kind : Fallback.values()) {
+            sb.append("Fallbacks (").append(kind.name().toLowerCase(Locale.ROOT)).append(") by ring:");
+            for (int ring = 1; ring <= 8; ring++) {
+                sb.append(' ').append(ring).append('=').append(getFallbacks(kind, ring));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gives everything recorded as a JSON object
+     */
+    public static String dumpJson() {
+        StringBuilder sb = new StringBuilder("{\"enabled\":").append(ENABLED);
+        if (!ENABLED)
+            return sb.append('}').toString();
+        sb.append(",\"seconds\":").append(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - since) / 1e9));
+        sb.append(",\"operations\":{");
+        for (Op op : OPS) {
+            LatencyHistogram h = Counters.LATENCY[op.ordinal()];
+            if (op.ordinal() > 0)
+                sb.append(',');
+            sb.append('"').append(op.getLabel()).append("\":{\"count\":").append(h.getCount())
+              .append(",\"meanNanos\":").append(String.format(Locale.ROOT, "%.1f", h.getMean()))
+              .append(",\"p50Nanos\":").append(h.percentile(0.5))
+              .append(",\"p99Nanos\":").append(h.percentile(0.99))
+              .append(",\"p999Nanos\":").append(h.percentile(0.999))
+              .append(",\"maxNanos\":").append(h.getMax())
+              .append(",\"bytesPerOp\":").append(bytesPerOp(op).equals("-") ? "null" : bytesPerOp(op))
+              .append('}');
+        }
+        sb.append("},\"illegalCoords\":").append(Counters.ILLEGAL_COORDS.sum()).append(",\"fallbacks\":{");
+        for (Fallback kind : Fallback.values()) {
+            if (kind.ordinal() > 0)
+                sb.append(',');
+            sb.append('"').append(kind.name().toLowerCase(Locale.ROOT)).append("\":[");
+            for (int ring = 1; ring <= 8; ring++) {
+                if (ring > 1)
+                    sb.append(',');
+                sb.append(getFallbacks(kind, ring));
+            }
+            sb.append(']');
+        }
+        return sb.append("}}").toString();
+    }
+
+    //Average bytes allocated per measured operation, - if it was never measured
+    private static String bytesPerOp(Op op) {
+        long n = Counters.ALLOCATIONS[op.ordinal()].sum();
+        return n == 0 ? "-" : String.valueOf(Counters.ALLOCATED[op.ordinal()].sum() / n);
+    }
+
+    //Gets the HotSpot thread bean that can measure allocation, null on JVMs without it
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported()) {
+            t.setThreadAllocatedMemoryEnabled(true);
+            return t;
+        }
+        return null;
+    }
+}
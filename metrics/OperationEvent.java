@@ -0,0 +1,43 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one instrumented calculation, committed when it finishes
+ */
+@Name("stronghold.Operation")
+@Label("Stronghold Calculation")
+@Category("Stronghold Calculator")
+@Description("A ring classification or stronghold prediction")
+@StackTrace(false)
+class OperationEvent extends Event {
+    /**
+     * Name of the calculation
+     */
+    @Label("Operation")
+    String operation;
+    /**
+     * Number of the ring the calculation used, 0 if there was none
+     */
+    @Label("Ring")
+    int ring;
+    /**
+     * How long the calculation took
+     */
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+    /**
+     * Bytes the calculation allocated, 0 if not measured
+     */
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
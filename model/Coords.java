@@ -7,7 +7,8 @@ package model;
  * as the excluded y coordinate represents height.
  * <p>
  * The convertNether() method allows these coordinates to be converted to nether coordinates, where one
- * nether coordinate unit (blocks) is equals to 8 in the overworld.
+ * nether coordinate unit (blocks) is equals to 8 in the overworld. {@link Position} is the immutable version
+ * for results that are cached or shared between threads.
  *
  * @author Matthew Welker
  */
@@ -47,8 +48,7 @@ public class Coords {
      * Creates new coordinates with the default values of x=0 and z=0
      */
     public Coords() {
-        x = 0;
-        z = 0;
+        this(0, 0);
     }
 
     /**
@@ -0,0 +1,253 @@
+package model;
+
+/**
+ * Finds a stronghold from Eyes of Ender thrown at different places. Each throw gives a line from where the player
+ * stood in the direction the eye flew, and the stronghold is estimated as the point with the least squared
+ * distance to every line. The spread of the lines around that point gives a confidence ellipse for the estimate.
+ * <p>
+ * Only running sums of the lines are kept, so adding a throw and solving are both O(1) and allocate nothing. One
+ * triangulator can be kept per player and solved again after every throw.
+ * <p>
+ * Directions are Minecraft yaw in degrees, as shown by the F3 screen: 0 is south (positive z), 90 is west
+ * (negative x), -90 and 270 are east (positive x) and 180 is north (negative z).
+ */
+public class EyeTriangulator {
+    /**
+     * Square root of the 95% quantile of the chi-squared distribution with 2 degrees of freedom, used to scale the
+     * standard deviations of the estimate into a 95% confidence ellipse
+     */
+    private static final double CONFIDENCE_95 = Math.sqrt(5.991464547107979);
+    /**
+     * Smallest determinant of the summed lines that can be solved, lines closer to parallel than this cannot
+     * give a point
+     */
+    private static final double MIN_DETERMINANT = 1e-9;
+    /**
+     * Standard deviation in blocks of how far a line passes from the stronghold, used for the confidence ellipse
+     * when there are not enough throws to estimate it from the lines themselves
+     */
+    private final double lineError;
+    /**
+     * Position of the first throw, every other position is kept relative to it so the sums keep their precision
+     * far from the origin
+     */
+    private double originX, originZ;
+    /**
+     * Sum of the projection matrices (I - d d^T) of every line
+     */
+    private double a11, a12, a22;
+    /**
+     * Sum of the projection matrices times the relative position of every line
+     */
+    private double b1, b2;
+    /**
+     * Sum of the squared distance of every relative position to the origin along its projection
+     */
+    private double c;
+    /**
+     * Number of throws added
+     */
+    private int throwCount;
+    /**
+     * The last solution, relative to the first throw
+     */
+    private double solX, solZ;
+    /**
+     * The semi axes of the confidence ellipse of the last solution in blocks
+     */
+    private double major, minor;
+    /**
+     * Angle of the major axis of the confidence ellipse in degrees from the x axis toward the z axis
+     */
+    private double orientation;
+    /**
+     * Whether the last solve found a point
+     */
+    private boolean solved;
+
+    /**
+     * Creates a triangulator with a line error of 8 blocks, half a chunk
+     */
+    public EyeTriangulator() {
+        this(8);
+    }
+
+    /**
+     * Creates a triangulator
+     *
+     * @param lineError Standard deviation in blocks of how far a line passes from the stronghold, used for the
+     * confidence ellipse until there are at least 3 throws
+     * @throws IllegalArgumentException If the line error is not positive
+     */
+    public EyeTriangulator(double lineError) {
+        if (!(lineError > 0))
+            throw new IllegalArgumentException("Line error must be positive");
+        this.lineError = lineError;
+    }
+
+    /**
+     * Adds a throw
+     *
+     * @param x The x coordinate the eye was thrown from
+     * @param z The z coordinate the eye was thrown from
+     * @param yaw The direction the eye flew in as Minecraft yaw in degrees
+     */
+    public void addThrow(double x, double z, double yaw) {
+        if (throwCount == 0) {
+            originX = x;
+            originZ = z;
+        }
+        double rad = Math.toRadians(yaw);
+        double dx = -Math.sin(rad);
+        double dz = Math.cos(rad);
+        double px = x - originX;
+        double pz = z - originZ;
+        double m11 = 1 - dx * dx;
+        double m12 = -dx * dz;
+        double m22 = 1 - dz * dz;
+        a11 += m11;
+        a12 += m12;
+        a22 += m22;
+        b1 += m11 * px + m12 * pz;
+        b2 += m12 * px + m22 * pz;
+        c += px * (m11 * px + m12 * pz) + pz * (m12 * px + m22 * pz);
+        throwCount++;
+        solved = false;
+    }
+
+    /**
+     * Removes every throw
+     */
+    public void reset() {
+        a11 = a12 = a22 = b1 = b2 = c = 0;
+        throwCount = 0;
+        solved = false;
+    }
+
+    /**
+     * Gets the number of throws added
+     */
+    public int getThrowCount() {
+        return throwCount;
+    }
+
+    /**
+     * Solves for the point closest to every line and its confidence ellipse
+     *
+     * @return True if a point was found, false if there are fewer than 2 throws or the lines are all parallel
+     */
+    public boolean solve() {
+        double det = a11 * a22 - a12 * a12;
+        if (throwCount < 2 || Math.abs(det) < MIN_DETERMINANT) {
+            solved = false;
+            return false;
+        }
+        //inverse of the summed projections
+        double i11 = a22 / det;
+        double i12 = -a12 / det;
+        double i22 = a11 / det;
+        solX = i11 * b1 + i12 * b2;
+        solZ = i12 * b1 + i22 * b2;
+        //sum of squared distances from the point to every line
+        double sse = solX * (a11 * solX + a12 * solZ) + solZ * (a12 * solX + a22 * solZ)
+                     - 2 * (solX * b1 + solZ * b2) + c;
+        double variance = throwCount > 2 ? Math.max(sse, 0) / (throwCount - 2) : lineError * lineError;
+        //the covariance of the point is variance * inverse, the ellipse axes are along its eigenvectors
+        double s11 = variance * i11, s12 = variance * i12, s22 = variance * i22;
+        double mid = (s11 + s22) / 2;
+        double rad = Math.sqrt((s11 - s22) * (s11 - s22) / 4 + s12 * s12);
+        major = CONFIDENCE_95 * Math.sqrt(mid + rad);
+        minor = CONFIDENCE_95 * Math.sqrt(Math.max(mid - rad, 0));
+        orientation = Math.toDegrees(0.5 * Math.atan2(2 * s12, s11 - s22));
+        solved = true;
+        return true;
+    }
+
+    /**
+     * Gets the x coordinate of the last solution
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getX() {
+        checkSolved();
+        return originX + solX;
+    }
+
+    /**
+     * Gets the z coordinate of the last solution
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getZ() {
+        checkSolved();
+        return originZ + solZ;
+    }
+
+    /**
+     * Gets the x coordinate of the last solution snapped to its chunk, 4 blocks from the chunk corner like the
+     * staircase the README says to measure from, so RingCalculator's +4 offset puts it at the chunk center
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getSnappedX() {
+        return Math.floorDiv((long) Math.floor(getX()), 16) * 16 + 4;
+    }
+
+    /**
+     * Gets the z coordinate of the last solution snapped to its chunk, see getSnappedX
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getSnappedZ() {
+        return Math.floorDiv((long) Math.floor(getZ()), 16) * 16 + 4;
+    }
+
+    /**
+     * Gets the semi major axis of the 95% confidence ellipse of the last solution in blocks
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getSemiMajor() {
+        checkSolved();
+        return major;
+    }
+
+    /**
+     * Gets the semi minor axis of the 95% confidence ellipse of the last solution in blocks
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getSemiMinor() {
+        checkSolved();
+        return minor;
+    }
+
+    /**
+     * Gets the angle of the major axis of the confidence ellipse in degrees, measured from the positive x axis
+     * toward the positive z axis
+     *
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public double getOrientation() {
+        checkSolved();
+        return orientation;
+    }
+
+    /**
+     * Creates a RingCalculator for the snapped solution, ready for calcStrongholds
+     *
+     * @param ignore Whether to ignore the solution not being in a ring, the ring then has to be set manually
+     * @return The RingCalculator for the found stronghold
+     * @throws IllegalCoordsException If the solution is not in a Stronghold ring and ignore is false
+     * @throws IllegalStateException If the last solve did not find a point
+     */
+    public RingCalculator toRingCalculator(boolean ignore) throws IllegalCoordsException {
+        return new RingCalculator(getSnappedX(), getSnappedZ(), ignore);
+    }
+
+    //Throws ISE if there is no solution
+    private void checkSolved() {
+        if (!solved)
+            throw new IllegalStateException("No solution, add at least 2 non parallel throws and call solve()");
+    }
+}
@@ -0,0 +1,72 @@
+package model;
+
+/**
+ * Immutable pair of x and z coordinates, the value version of {@link Coords}. Converting to the other dimension
+ * gives a new Position instead of changing this one, and two Positions with the same coordinates are equal, so
+ * Positions can be used as map keys, shared between threads and compared in tests.
+ *
+ * @param x The x coordinate, east is positive
+ * @param z The z coordinate, south is positive
+ */
+public record Position(double x, double z) {
+    /**
+     * The origin
+     */
+    public static final Position ORIGIN = new Position(0, 0);
+
+    /**
+     * Creates a Position with the same coordinates as a Coords
+     *
+     * @param c The coordinates to copy
+     * @return The Position
+     */
+    public static Position of(Coords c) {
+        return new Position(c.getX(), c.getZ());
+    }
+
+    /**
+     * Gets the same place in nether coordinates, where one block is 8 overworld blocks
+     */
+    public Position toNether() {
+        return new Position(x / 8, z / 8);
+    }
+
+    /**
+     * Gets the same place in overworld coordinates from nether coordinates
+     */
+    public Position toOverworld() {
+        return new Position(x * 8, z * 8);
+    }
+
+    /**
+     * Gets the squared distance from the origin, what the ring bounds are compared to
+     */
+    public double distanceSquared() {
+        return x * x + z * z;
+    }
+
+    /**
+     * Gets the quadrant the coordinates are in, a coordinate of 0 counts as positive
+     */
+    public Coords.Quadrant quadrant() {
+        if (x < 0 && z < 0) return Coords.Quadrant.NEGNEG;
+        else if (x >= 0 && z >= 0) return Coords.Quadrant.POSPOS;
+        else if (x >= 0) return Coords.Quadrant.POSNEG;
+        else return Coords.Quadrant.NEGPOS;
+    }
+
+    /**
+     * Creates a mutable Coords with the same coordinates, for code that still uses them
+     */
+    public Coords toCoords() {
+        return new Coords(x, z);
+    }
+
+    /**
+     * Represents the coordinates in the form (x, z), the same as Coords
+     */
+    @Override
+    public String toString() {
+        return "(" + (int) x + ", " + (int) z + ")";
+    }
+}
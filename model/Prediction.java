@@ -0,0 +1,157 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Immutable result of calculating the strongholds for a found stronghold. Unlike the Coords in the HashSet that
+ * calcStrongholds returns, nothing in a Prediction can be changed after it is created, so one can be cached and
+ * shared between threads without copying or locking.
+ */
+public final class Prediction {
+    /**
+     * The ring the found stronghold is in
+     */
+    private final Ring ring;
+    /**
+     * Whether the coordinates are nether coordinates
+     */
+    private final boolean nether;
+    /**
+     * Coordinates of the predicted strongholds, in the same order as ProjectionKernel gives them
+     */
+    private final double[] xs, zs;
+
+    /**
+     * Calculates the prediction for a found stronghold
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     */
+    public Prediction(Ring ring, double x, double z, boolean nether) {
+        this(RingTables.current(), ring, x, z, nether);
+    }
+
+    /**
+     * Calculates the prediction for a found stronghold with the given ring tables
+     *
+     * @param tables The ring tables to use
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     */
+    Prediction(RingTables tables, Ring ring, double x, double z, boolean nether) {
+        this.ring = ring;
+        this.nether = nether;
+        xs = new double[Math.max(tables.getNumStrongholds(ring) - 1, 0)];
+        zs = new double[xs.length];
+        ProjectionKernel.project(tables, ring, x, z, nether, xs, zs, 0);
+    }
+
+    /**
+     * Gets the ring the found stronghold is in
+     */
+    public Ring getRing() {
+        return ring;
+    }
+
+    /**
+     * Whether the coordinates are nether coordinates
+     */
+    public boolean isNether() {
+        return nether;
+    }
+
+    /**
+     * Gets the number of predicted strongholds
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Gets the x coordinate of a predicted stronghold
+     *
+     * @param i The index of the prediction, slot i + 1
+     */
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Gets the z coordinate of a predicted stronghold
+     *
+     * @param i The index of the prediction, slot i + 1
+     */
+    public double getZ(int i) {
+        return zs[i];
+    }
+
+    /**
+     * Gets the coordinates of a predicted stronghold
+     *
+     * @param i The index of the prediction, slot i + 1
+     */
+    public Position get(int i) {
+        return new Position(xs[i], zs[i]);
+    }
+
+    /**
+     * Gets the coordinates of every predicted stronghold in order
+     *
+     * @return An unmodifiable list of the predictions, slot i + 1 at index i
+     */
+    public List<Position> positions() {
+        Position[] positions = new Position[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            positions[i] = get(i);
+        }
+        return List.of(positions);
+    }
+
+    /**
+     * Creates a new set of Coords for the predictions, which the caller is free to change
+     *
+     * @return A HashSet of the predicted coordinates
+     */
+    public HashSet<Coords> toCoords() {
+        HashSet<Coords> coords = new HashSet<>();
+        for (int i = 0; i < xs.length; i++) {
+            coords.add(new Coords(xs[i], zs[i]));
+        }
+        return coords;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Prediction p))
+            return false;
+        return ring == p.ring && nether == p.nether && Arrays.equals(xs, p.xs) && Arrays.equals(zs, p.zs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * ring.hashCode() + Boolean.hashCode(nether)) + Arrays.hashCode(xs))
+               + Arrays.hashCode(zs);
+    }
+
+    /**
+     * Represents the prediction as the ring and the list of coordinates
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Ring ").append(ring.getRingNum()).append(nether ? " nether [" : " [");
+        for (int i = 0; i < xs.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append('(').append((int) xs[i]).append(", ").append((int) zs[i]).append(')');
+        }
+        return sb.append(']').toString();
+    }
+}
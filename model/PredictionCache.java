@@ -0,0 +1,234 @@
+package model;
+
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe cache of predictions, for servers where many players report the same few strongholds. Predictions
+ * are keyed by the ring, the chunk the found stronghold is in and the dimension. Every position in a chunk leads
+ * to the same stronghold, so the prediction is calculated from the center of the chunk and shared by every
+ * report from that chunk.
+ * <p>
+ * The cache is split into segments, each a least recently used map with its own lock, so threads looking up
+ * different keys rarely wait for each other. Each segment evicts its least recently used prediction once it is
+ * full, and predictions can optionally expire a fixed time after they were calculated. Predictions made with
+ * {@link RingTables} that are no longer in use are dropped the same way as expired ones. Hits, misses, evictions
+ * and expirations are counted.
+ */
+public class PredictionCache {
+    /**
+     * Number of segments, a power of two
+     */
+    private static final int SEGMENTS = 16;
+    /**
+     * The segments, picked by the hash of the key
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+    /**
+     * Nanoseconds a prediction stays in the cache after it is calculated, 0 for no limit
+     */
+    private final long ttlNanos;
+    /**
+     * Number of lookups that found a prediction
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * Number of lookups that had to calculate a prediction
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * Number of predictions evicted because a segment was full
+     */
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * Number of predictions dropped because they were too old or made with ring tables no longer in use
+     */
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * A cached prediction and when it expires
+     *
+     * @param prediction The prediction
+     * @param expires System.nanoTime() after which the prediction is too old, ignored without a time limit
+     * @param tables The ring tables the prediction was made with
+     */
+    private record Entry(Prediction prediction, long expires, RingTables tables) {
+    }
+
+    /**
+     * A least recently used map of part of the cache
+     */
+    private class Segment extends LinkedHashMap<Long, Entry> {
+        /**
+         * Serial Version ID
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+        /**
+         * Guards every access to the map, including reads since they reorder it
+         */
+        private final transient ReentrantLock lock = new ReentrantLock();
+        /**
+         * Most predictions the segment holds
+         */
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates a cache
+     *
+     * @param maxSize Most predictions the cache holds
+     * @param ttlMillis Milliseconds a prediction stays in the cache after it is calculated, 0 for no limit
+     * @throws IllegalArgumentException If the size is not positive or the time limit is negative
+     */
+    public PredictionCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        if (ttlMillis < 0)
+            throw new IllegalArgumentException("Time limit cannot be negative");
+        ttlNanos = ttlMillis * 1_000_000;
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Gets the prediction for a found stronghold, calculating it if it is not cached. The coordinates are measured
+     * the same way as the ones given to RingCalculator.
+     *
+     * @param x The x coordinate of the found stronghold
+     * @param z The z coordinate of the found stronghold
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @return The prediction
+     * @throws IllegalCoordsException If the coordinates are not within the bounds of a ring
+     */
+    public Prediction get(double x, double z, boolean nether) throws IllegalCoordsException {
+        return get(RingCalculator.getRing(x, z), x, z, nether);
+    }
+
+    /**
+     * Gets the prediction for a found stronghold in a given ring, calculating it if it is not cached
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold
+     * @param z The z coordinate of the found stronghold
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @return The prediction
+     */
+    public Prediction get(Ring ring, double x, double z, boolean nether) {
+        int chunkX = Math.floorDiv((int) Math.floor(x), 16);
+        int chunkZ = Math.floorDiv((int) Math.floor(z), 16);
+        long key = StrongholdSet.pack(ring.getRingNum(), nether ? 1 : 0, chunkX, chunkZ);
+        Segment seg = segments[spread(key) & (SEGMENTS - 1)];
+        long now = ttlNanos > 0 ? System.nanoTime() : 0;
+        RingTables tables = RingTables.current();
+        seg.lock.lock();
+        try {
+            Entry e = seg.get(key);
+            if (e != null) {
+                if ((ttlNanos == 0 || now - e.expires() < 0) && e.tables() == tables) {
+                    hits.increment();
+                    return e.prediction();
+                }
+                seg.remove(key);
+                expirations.increment();
+            }
+        } finally {
+            seg.lock.unlock();
+        }
+        misses.increment();
+        //calculate outside of the lock, two threads missing the same key at once just both calculate it
+        Prediction p = new Prediction(tables, ring, chunkX * 16 + 8, chunkZ * 16 + 8, nether);
+        seg.lock.lock();
+        try {
+            seg.put(key, new Entry(p, now + ttlNanos, tables));
+        } finally {
+            seg.lock.unlock();
+        }
+        return p;
+    }
+
+    /**
+     * Removes every prediction from the cache, the counters are kept
+     */
+    public void clear() {
+        for (Segment seg : segments) {
+            seg.lock.lock();
+            try {
+                seg.clear();
+            } finally {
+                seg.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of predictions in the cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment seg : segments) {
+            seg.lock.lock();
+            try {
+                size += seg.size();
+            } finally {
+                seg.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of lookups that found a prediction
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to calculate a prediction
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of predictions evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of predictions dropped because they were too old or made with ring tables no longer in use
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    //Mixes the bits of a key so neighbouring chunks spread over the segments
+    private static int spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
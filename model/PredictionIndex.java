@@ -0,0 +1,183 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index over the predicted strongholds of a session, possibly from several rings, for finding the
+ * predictions closest to a player. The predictions are kept in a 2-d tree stored in flat arrays, so a k nearest
+ * query only visits O(log n) nodes in the common case and compares squared distances, never calling sqrt.
+ * <p>
+ * Predictions are identified by the packed entries of {@link StrongholdSet}, so a result gives the ring, slot
+ * and chunk of the prediction. Removing a found stronghold marks it removed and updates the number of remaining
+ * predictions below each node on its path, so subtrees with nothing left in them are skipped by later queries.
+ */
+public class PredictionIndex {
+    /**
+     * Packed entries in tree order, the node of the range [lo, hi) is at (lo + hi) / 2
+     */
+    private final long[] entries;
+    /**
+     * Overworld block coordinates of the center of the chunk of each node
+     */
+    private final double[] xs, zs;
+    /**
+     * Number of predictions not removed in the subtree of each node, including the node
+     */
+    private final int[] live;
+    /**
+     * Whether each node has been removed
+     */
+    private final boolean[] removed;
+    /**
+     * Node of each ring and slot, indexed by ring * MAX_SLOTS + slot, -1 if not in the index
+     */
+    private final int[] nodeOf;
+
+    /**
+     * Creates an index over every prediction in the given sets
+     *
+     * @param sets The predictions to index
+     */
+    public PredictionIndex(StrongholdSet... sets) {
+        int count = 0;
+        for (StrongholdSet s : sets) {
+            count += s.size();
+        }
+        long[] all = new long[count];
+        int i = 0;
+        for (StrongholdSet s : sets) {
+            for (long m = s.slotMask(); m != 0; m &= m - 1) {
+                all[i++] = s.get(Long.numberOfTrailingZeros(m));
+            }
+        }
+        entries = new long[count];
+        xs = new double[count];
+        zs = new double[count];
+        live = new int[count];
+        removed = new boolean[count];
+        nodeOf = new int[16 * StrongholdSet.MAX_SLOTS];
+        Arrays.fill(nodeOf, -1);
+        build(all, 0, count, 0);
+        for (int n = 0; n < count; n++) {
+            xs[n] = StrongholdSet.blockX(entries[n], false);
+            zs[n] = StrongholdSet.blockZ(entries[n], false);
+            nodeOf[key(entries[n])] = n;
+        }
+    }
+
+    /**
+     * Gets the number of predictions that have not been removed
+     */
+    public int size() {
+        return entries.length == 0 ? 0 : live[entries.length >>> 1];
+    }
+
+    /**
+     * Removes a prediction, such as when the stronghold it leads to has been found
+     *
+     * @param ring The ring number of the prediction
+     * @param slot The slot of the prediction
+     * @return True if the prediction was in the index and had not been removed yet
+     */
+    public boolean remove(int ring, int slot) {
+        if (ring < 0 || ring >= 16 || slot < 0 || slot >= StrongholdSet.MAX_SLOTS)
+            return false;
+        int node = nodeOf[ring * StrongholdSet.MAX_SLOTS + slot];
+        if (node == -1 || removed[node])
+            return false;
+        removed[node] = true;
+        //walk down from the root to the node, every node passed has one less prediction below it
+        int lo = 0, hi = entries.length;
+        while (true) {
+            int mid = (lo + hi) >>> 1;
+            live[mid]--;
+            if (mid == node)
+                return true;
+            if (node < mid) hi = mid;
+            else lo = mid + 1;
+        }
+    }
+
+    /**
+     * Finds the predictions closest to a position
+     *
+     * @param x The x coordinate of the position
+     * @param z The z coordinate of the position
+     * @param nether Whether the position is in nether coordinates, distances are always overworld distances
+     * @param k The most predictions to find
+     * @param outEntries Output for the packed entries of the closest predictions, closest first, at least k long
+     * @param outDist2 Output for the squared overworld distance to each prediction, at least k long
+     * @return The number of predictions found, at most k
+     */
+    public int nearest(double x, double z, boolean nether, int k, long[] outEntries, double[] outDist2) {
+        if (nether) {
+            x *= 8;
+            z *= 8;
+        }
+        return search(0, entries.length, 0, x, z, Math.min(k, size()), outEntries, outDist2, 0);
+    }
+
+    //Searches the subtree of [lo, hi) split on axis, keeping the found predictions sorted, returns the count
+    private int search(int lo, int hi, int axis, double x, double z, int k, long[] outE, double[] outD,
+                       int found) {
+        if (lo >= hi || k == 0)
+            return found;
+        int mid = (lo + hi) >>> 1;
+        if (live[mid] == 0)
+            return found;
+        double dx = xs[mid] - x;
+        double dz = zs[mid] - z;
+        if (!removed[mid])
+            found = insert(entries[mid], dx * dx + dz * dz, k, outE, outD, found);
+        double diff = axis == 0 ? -dx : -dz; //query minus node along the split axis
+        int nearLo = diff < 0 ? lo : mid + 1, nearHi = diff < 0 ? mid : hi;
+        int farLo = diff < 0 ? mid + 1 : lo, farHi = diff < 0 ? hi : mid;
+        found = search(nearLo, nearHi, axis ^ 1, x, z, k, outE, outD, found);
+        //the far side can only be closer if the split line is closer than the worst kept prediction
+        if (found < k || diff * diff < outD[found - 1])
+            found = search(farLo, farHi, axis ^ 1, x, z, k, outE, outD, found);
+        return found;
+    }
+
+    //Inserts a prediction into the sorted results if it is closer than the worst one kept, returns the count
+    private static int insert(long entry, double d2, int k, long[] outE, double[] outD, int found) {
+        if (found == k && d2 >= outD[k - 1])
+            return found;
+        int i = found == k ? k - 1 : found++;
+        while (i > 0 && outD[i - 1] > d2) {
+            outE[i] = outE[i - 1];
+            outD[i] = outD[i - 1];
+            i--;
+        }
+        outE[i] = entry;
+        outD[i] = d2;
+        return found;
+    }
+
+    //Puts the median of the range along the axis at the middle and recurses into both halves
+    private void build(long[] all, int lo, int hi, int axis) {
+        if (lo >= hi)
+            return;
+        long[] range = Arrays.copyOfRange(all, lo, hi);
+        //sort by the axis coordinate, packing it above the index so a plain long sort can be used
+        long[] keys = new long[range.length];
+        for (int i = 0; i < range.length; i++) {
+            int c = axis == 0 ? StrongholdSet.chunkX(range[i]) : StrongholdSet.chunkZ(range[i]);
+            keys[i] = (long) c << 32 | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < range.length; i++) {
+            all[lo + i] = range[(int) keys[i]];
+        }
+        int mid = (lo + hi) >>> 1;
+        entries[mid] = all[mid];
+        live[mid] = hi - lo;
+        build(all, lo, mid, axis ^ 1);
+        build(all, mid + 1, hi, axis ^ 1);
+    }
+
+    //Index into nodeOf for a packed entry
+    private static int key(long entry) {
+        return StrongholdSet.ring(entry) * StrongholdSet.MAX_SLOTS + StrongholdSet.slot(entry);
+    }
+}
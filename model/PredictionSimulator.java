@@ -0,0 +1,203 @@
+package model;
+
+import java.io.Serial;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Measures how far off the predictions are by simulating worlds. Every simulated world places the strongholds of a
+ * ring the way the {@link RingTables} in use describe them: an equal angle apart from a random starting angle, each
+ * at a random distance between the ring's minimum and maximum, and optionally moved up to a number of blocks along
+ * each axis to stand in for snapping to a different biome. One stronghold is picked as the found one, the
+ * predictions are calculated from it the same way RingCalculator does, and the distance from each prediction to the
+ * stronghold it is meant to lead to is added to a histogram for the ring.
+ * <p>
+ * Trials are split into fixed size batches and every batch gets its own random generator seeded from the seed,
+ * the ring and the batch number, so the result is the same no matter how many cores run it or in what order.
+ */
+public class PredictionSimulator {
+    /**
+     * Width of a histogram bin in blocks
+     */
+    public static final int BIN_WIDTH = 16;
+    /**
+     * Number of histogram bins, the last one holds every error past the others
+     */
+    public static final int BINS = 1024;
+    /**
+     * Number of trials in a batch, the unit of work that gets its own random generator
+     */
+    private static final int BATCH = 1 << 14;
+    /**
+     * Seed all random generators are derived from
+     */
+    private final long seed;
+    /**
+     * Most blocks a stronghold is moved along each axis to simulate biome snapping
+     */
+    private final double jitter;
+
+    /**
+     * Creates a simulator
+     *
+     * @param seed Seed all random generators are derived from
+     * @param jitter Most blocks a stronghold is moved along each axis to simulate biome snapping, 0 for none
+     * @throws IllegalArgumentException If the jitter is negative
+     */
+    public PredictionSimulator(long seed, double jitter) {
+        if (jitter < 0)
+            throw new IllegalArgumentException("Jitter cannot be negative");
+        this.seed = seed;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Simulates worlds for a ring
+     *
+     * @param ring The ring to simulate
+     * @param worlds The number of worlds to simulate
+     * @return The histogram of prediction errors, BINS long, bin i counting errors from i * BIN_WIDTH blocks up to
+     * (i + 1) * BIN_WIDTH blocks
+     * @throws IllegalArgumentException If the ring has no strongholds in the ring config in use
+     */
+    public long[] simulate(Ring ring, long worlds) {
+        //one read of the tables, so every batch places and predicts the same number of strongholds
+        RingTables t = RingTables.current();
+        if (t.getNumStrongholds(ring) == 0)
+            throw new IllegalArgumentException(ring + " has no strongholds in the ring config");
+        long batches = (worlds + BATCH - 1) / BATCH;
+        return ForkJoinPool.commonPool().invoke(new Batches(t, ring, worlds, 0, batches));
+    }
+
+    /**
+     * Gets a percentile of a histogram
+     *
+     * @param hist The histogram
+     * @param p The percentile between 0 and 1
+     * @return The upper edge in blocks of the bin the percentile falls in
+     */
+    public static double percentile(long[] hist, double p) {
+        long total = 0;
+        for (long c : hist) {
+            total += c;
+        }
+        long target = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < hist.length; i++) {
+            seen += hist[i];
+            if (seen >= target && seen > 0)
+                return (i + 1.0) * BIN_WIDTH;
+        }
+        return Double.NaN;
+    }
+
+    //Simulates one batch of worlds into the histogram
+    private void batch(RingTables t, Ring ring, long batch, int worlds, long[] hist) {
+        //mix the batch number in so neighbouring batches get unrelated streams
+        SplittableRandom rand = new SplittableRandom(seed ^ (ring.ordinal() + 1) * 0x9E3779B97F4A7C15L
+                                                     ^ batch * 0xC2B2AE3D27D4EB4FL);
+        int n = t.getNumStrongholds(ring);
+        double inner = t.getMin(ring);
+        double outer = t.getMax(ring);
+        double step = 2 * Math.PI / n;
+        double[] tx = new double[n], tz = new double[n];
+        double[] px = new double[n], pz = new double[n];
+        for (int w = 0; w < worlds; w++) {
+            double phase = rand.nextDouble() * 2 * Math.PI;
+            for (int k = 0; k < n; k++) {
+                double r = inner + rand.nextDouble() * (outer - inner);
+                tx[k] = r * Math.cos(phase + k * step);
+                tz[k] = r * Math.sin(phase + k * step);
+                if (jitter > 0) {
+                    tx[k] += (rand.nextDouble() * 2 - 1) * jitter;
+                    tz[k] += (rand.nextDouble() * 2 - 1) * jitter;
+                }
+            }
+            int found = rand.nextInt(n);
+            int count = ProjectionKernel.project(t, ring, tx[found], tz[found], false, px, pz, 0);
+            for (int k = 0; k < count; k++) {
+                int target = (found + k + 1) % n;
+                double dx = px[k] - tx[target];
+                double dz = pz[k] - tz[target];
+                int bin = (int) (Math.sqrt(dx * dx + dz * dz) / BIN_WIDTH);
+                hist[Math.min(bin, BINS - 1)]++;
+            }
+        }
+    }
+
+    /**
+     * Fork-join task simulating a range of batches and adding up their histograms
+     */
+    private class Batches extends RecursiveTask<long[]> {
+        /**
+         * Serial Version ID
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+        /**
+         * Ring tables used by every batch of the simulation
+         */
+        private final transient RingTables tables;
+        /**
+         * The ring to simulate
+         */
+        private final Ring ring;
+        /**
+         * Total number of worlds, the last batch may be smaller than the others
+         */
+        private final long worlds;
+        /**
+         * Batches to simulate, from inclusive and to exclusive
+         */
+        private final long from, to;
+
+        Batches(RingTables tables, Ring ring, long worlds, long from, long to) {
+            this.tables = tables;
+            this.ring = ring;
+            this.worlds = worlds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > 1) {
+                long mid = (from + to) >>> 1;
+                Batches left = new Batches(tables, ring, worlds, from, mid);
+                Batches right = new Batches(tables, ring, worlds, mid, to);
+                right.fork();
+                long[] a = left.compute();
+                long[] b = right.join();
+                for (int i = 0; i < BINS; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+            long[] hist = new long[BINS];
+            if (from < to)
+                batch(tables, ring, from, (int) Math.min(BATCH, worlds - from * BATCH), hist);
+            return hist;
+        }
+    }
+
+    /**
+     * Simulates every ring and prints the error percentiles in blocks
+     *
+     * @param args Optional number of worlds per ring, seed and jitter in blocks
+     */
+    public static void main(String[] args) {
+        long worlds = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        double jitter = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        PredictionSimulator sim = new PredictionSimulator(seed, jitter);
+        System.out.printf(Locale.ROOT, "%-6s %8s %8s %8s %8s %8s%n", "Ring", "p50", "p90", "p95", "p99", "p99.9");
+        for (Ring r : RingTables.current().rings()) {
+            long[] hist = sim.simulate(r, worlds);
+            System.out.printf(Locale.ROOT, "%-6s %8.0f %8.0f %8.0f %8.0f %8.0f%n", r, percentile(hist, 0.5),
+                              percentile(hist, 0.9), percentile(hist, 0.95), percentile(hist, 0.99),
+                              percentile(hist, 0.999));
+        }
+    }
+}
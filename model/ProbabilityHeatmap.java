@@ -0,0 +1,366 @@
+package model;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Where a single predicted stronghold could actually be, as a probability for every cell of a grid of chunks.
+ * A prediction is only the average distance of its ring at its expected angle, but the stronghold can be anywhere
+ * across the width of the ring and a little to either side of that angle. The heatmap multiplies a uniform
+ * distribution across the ring by a normal distribution around the angle, and rasterises it over the part of the
+ * ring the stronghold can be in.
+ * <p>
+ * The grid is filled in parallel, one tile of cells per fork-join task. Each cell is normally one chunk, but a
+ * largest number of cells can be given, in which case cells are made 2, 4, 8... chunks wide until the grid fits.
+ * This keeps the memory used for the outer rings bounded.
+ */
+public class ProbabilityHeatmap {
+    /**
+     * Width in cells of the tiles the grid is filled in
+     */
+    private static final int TILE = 64;
+    /**
+     * How many standard deviations of the angle either side of the prediction are covered by the grid
+     */
+    private static final double SIGMAS = 3;
+    /**
+     * Size of a chunk in blocks
+     */
+    private static final int CHUNK = 16;
+    /**
+     * Chunk x and z coordinates of the corner of the grid with the lowest coordinates
+     */
+    private final int originChunkX, originChunkZ;
+    /**
+     * Width of a cell in chunks, a power of two
+     */
+    private final int cellChunks;
+    /**
+     * Number of cells along x and z
+     */
+    private final int width, height;
+    /**
+     * Probability of each cell, row by row along x
+     */
+    private final float[] grid;
+
+    /**
+     * Creates the heatmap for a prediction
+     *
+     * @param ring The ring of the prediction
+     * @param angle The angle of the prediction in degrees, measured from the positive x axis toward positive z
+     * @param angleError Standard deviation of the angle in degrees
+     * @param maxCells Most cells the grid can have, 0 for no limit
+     * @throws IllegalArgumentException If the angle error is not positive or maxCells is negative
+     */
+    public ProbabilityHeatmap(Ring ring, double angle, double angleError, int maxCells) {
+        this(RingTables.current(), ring, angle, angleError, maxCells);
+    }
+
+    /**
+     * Creates the heatmap for a prediction with the bounds of a ring in the given tables
+     *
+     * @param tables The ring tables to use
+     * @param ring The ring of the prediction
+     * @param angle The angle of the prediction in degrees, measured from the positive x axis toward positive z
+     * @param angleError Standard deviation of the angle in degrees
+     * @param maxCells Most cells the grid can have, 0 for no limit
+     * @throws IllegalArgumentException If the angle error is not positive, maxCells is negative or the ring has no
+     * strongholds in the tables
+     */
+    public ProbabilityHeatmap(RingTables tables, Ring ring, double angle, double angleError, int maxCells) {
+        if (!(angleError > 0))
+            throw new IllegalArgumentException("Angle error must be positive");
+        if (maxCells < 0)
+            throw new IllegalArgumentException("maxCells cannot be negative");
+        if (tables.getNumStrongholds(ring) == 0)
+            throw new IllegalArgumentException(ring + " has no strongholds in the ring config");
+        double inner = tables.getMin(ring);
+        double outer = tables.getMax(ring);
+        double center = Math.toRadians(angle);
+        double sigma = Math.toRadians(angleError);
+        double spread = Math.min(SIGMAS * sigma, Math.PI);
+        //bounding box of the annular sector, its corners and any axis it crosses
+        double minX = Double.MAX_VALUE, minZ = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        double[] edges = {center - spread, center + spread};
+        for (double a : edges) {
+            for (double r : new double[]{inner, outer}) {
+                minX = Math.min(minX, r * Math.cos(a));
+                maxX = Math.max(maxX, r * Math.cos(a));
+                minZ = Math.min(minZ, r * Math.sin(a));
+                maxZ = Math.max(maxZ, r * Math.sin(a));
+            }
+        }
+        for (int q = -4; q <= 4; q++) {
+            double a = q * Math.PI / 2;
+            if (Math.abs(wrap(a - center)) <= spread) {
+                minX = Math.min(minX, outer * Math.cos(a));
+                maxX = Math.max(maxX, outer * Math.cos(a));
+                minZ = Math.min(minZ, outer * Math.sin(a));
+                maxZ = Math.max(maxZ, outer * Math.sin(a));
+            }
+        }
+        int cx0 = Math.floorDiv((int) Math.floor(minX), CHUNK);
+        int cz0 = Math.floorDiv((int) Math.floor(minZ), CHUNK);
+        int chunksX = Math.floorDiv((int) Math.ceil(maxX), CHUNK) - cx0 + 1;
+        int chunksZ = Math.floorDiv((int) Math.ceil(maxZ), CHUNK) - cz0 + 1;
+        int cell = 1;
+        while (maxCells > 0 && (long) ceilDiv(chunksX, cell) * ceilDiv(chunksZ, cell) > maxCells) {
+            cell *= 2;
+        }
+        originChunkX = cx0;
+        originChunkZ = cz0;
+        cellChunks = cell;
+        width = ceilDiv(chunksX, cell);
+        height = ceilDiv(chunksZ, cell);
+        grid = new float[width * height];
+        Fill fill = new Fill(center, sigma, inner, outer, 0, width, 0, height);
+        ForkJoinPool.commonPool().invoke(fill);
+        double total = fill.sum;
+        if (total > 0) {
+            ForkJoinPool.commonPool().invoke(new Normalize((float) (1 / total), 0, grid.length));
+        }
+    }
+
+    /**
+     * Creates the heatmap for slot k of a prediction from a found stronghold, see {@link ProjectionKernel}
+     *
+     * @param ring The ring of the found stronghold
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param slot The slot of the prediction
+     * @param angleError Standard deviation of the angle in degrees
+     * @param maxCells Most cells the grid can have, 0 for no limit
+     * @return The heatmap of the prediction
+     * @throws IllegalArgumentException If the ring has no strongholds in the ring config in use
+     */
+    public static ProbabilityHeatmap forSlot(Ring ring, double x, double z, int slot, double angleError,
+                                             int maxCells) {
+        return forSlot(RingTables.current(), ring, x, z, slot, angleError, maxCells);
+    }
+
+    /**
+     * Same as {@link #forSlot(Ring, double, double, int, double, int)} with the given tables, so the angle and the
+     * bounds come from the same config
+     *
+     * @param tables The ring tables to use
+     * @param ring The ring of the found stronghold
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param slot The slot of the prediction
+     * @param angleError Standard deviation of the angle in degrees
+     * @param maxCells Most cells the grid can have, 0 for no limit
+     * @return The heatmap of the prediction
+     * @throws IllegalArgumentException If the ring has no strongholds in the tables
+     */
+    public static ProbabilityHeatmap forSlot(RingTables tables, Ring ring, double x, double z, int slot,
+                                             double angleError, int maxCells) {
+        int n = tables.getNumStrongholds(ring);
+        if (n == 0)
+            throw new IllegalArgumentException(ring + " has no strongholds in the ring config");
+        double angle = Math.toDegrees(Math.atan2(z, x)) + 360.0 * slot / n;
+        return new ProbabilityHeatmap(tables, ring, angle, angleError, maxCells);
+    }
+
+    /**
+     * Gets the number of cells along x
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of cells along z
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the width of a cell in chunks
+     */
+    public int getCellChunks() {
+        return cellChunks;
+    }
+
+    /**
+     * Gets the chunk x coordinate of the lowest corner of a cell
+     *
+     * @param col The column of the cell
+     */
+    public int getChunkX(int col) {
+        return originChunkX + col * cellChunks;
+    }
+
+    /**
+     * Gets the chunk z coordinate of the lowest corner of a cell
+     *
+     * @param row The row of the cell
+     */
+    public int getChunkZ(int row) {
+        return originChunkZ + row * cellChunks;
+    }
+
+    /**
+     * Gets the probability of the stronghold being in a cell
+     *
+     * @param col The column of the cell
+     * @param row The row of the cell
+     */
+    public float getProbability(int col, int row) {
+        return grid[row * width + col];
+    }
+
+    /**
+     * Gets the probability of every cell, row by row along x. The array is not copied.
+     */
+    public float[] getGrid() {
+        return grid;
+    }
+
+    /**
+     * Ranks the cells from most to least likely, taking as few cells as are needed to reach a total probability
+     *
+     * @param mass The total probability to reach, such as 0.9 for the smallest area holding 90% of the chance
+     * @return The indexes (row * width + col) of the cells in order of probability
+     */
+    public int[] searchArea(double mass) {
+        //sort by probability using the float bits, which order the same as the non negative floats
+        long[] keys = new long[grid.length];
+        for (int i = 0; i < grid.length; i++) {
+            keys[i] = (long) Float.floatToIntBits(grid[i]) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] cells = new int[grid.length];
+        double total = 0;
+        int n = 0;
+        for (int i = keys.length - 1; i >= 0 && total < mass; i--) {
+            cells[n] = (int) keys[i];
+            total += grid[cells[n++]];
+        }
+        return Arrays.copyOf(cells, n);
+    }
+
+    //Wraps an angle into -pi to pi
+    private static double wrap(double a) {
+        return a - 2 * Math.PI * Math.round(a / (2 * Math.PI));
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    /**
+     * Fills a range of columns and rows with the unnormalized density, splitting into tiles
+     */
+    private class Fill extends RecursiveAction {
+        /**
+         * Serial Version ID
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+        /**
+         * Angle of the prediction and its standard deviation in radians
+         */
+        private final double center, sigma;
+        /**
+         * Inner and outer distance of the ring
+         */
+        private final double inner, outer;
+        /**
+         * Columns and rows to fill, from inclusive and to exclusive
+         */
+        private final int col0, col1, row0, row1;
+        /**
+         * Sum of the filled cells, valid once the task is done
+         */
+        private double sum;
+
+        Fill(double center, double sigma, double inner, double outer, int col0, int col1, int row0, int row1) {
+            this.center = center;
+            this.sigma = sigma;
+            this.inner = inner;
+            this.outer = outer;
+            this.col0 = col0;
+            this.col1 = col1;
+            this.row0 = row0;
+            this.row1 = row1;
+        }
+
+        @Override
+        protected void compute() {
+            if (col1 - col0 > TILE || row1 - row0 > TILE) {
+                Fill a, b;
+                if (col1 - col0 >= row1 - row0) {
+                    int mid = (col0 + col1) >>> 1;
+                    a = new Fill(center, sigma, inner, outer, col0, mid, row0, row1);
+                    b = new Fill(center, sigma, inner, outer, mid, col1, row0, row1);
+                } else {
+                    int mid = (row0 + row1) >>> 1;
+                    a = new Fill(center, sigma, inner, outer, col0, col1, row0, mid);
+                    b = new Fill(center, sigma, inner, outer, col0, col1, mid, row1);
+                }
+                invokeAll(a, b);
+                sum = a.sum + b.sum;
+                return;
+            }
+            double cellBlocks = (double) cellChunks * CHUNK;
+            double inner2 = inner * inner, outer2 = outer * outer;
+            double inv2s2 = 1 / (2 * sigma * sigma);
+            for (int row = row0; row < row1; row++) {
+                double z = (double) originChunkZ * CHUNK + (row + 0.5) * cellBlocks;
+                for (int col = col0; col < col1; col++) {
+                    double x = (double) originChunkX * CHUNK + (col + 0.5) * cellBlocks;
+                    double r2 = x * x + z * z;
+                    float p = 0;
+                    if (r2 >= inner2 && r2 <= outer2) {
+                        double d = wrap(Math.atan2(z, x) - center);
+                        //uniform across the ring spreads over a larger circumference further out
+                        p = (float) (Math.exp(-d * d * inv2s2) / Math.sqrt(r2));
+                    }
+                    grid[row * width + col] = p;
+                    sum += p;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales a range of the grid so the whole grid sums to 1
+     */
+    private class Normalize extends RecursiveAction {
+        /**
+         * Serial Version ID
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+        /**
+         * Factor to scale by
+         */
+        private final float scale;
+        /**
+         * Range of the grid to scale, from inclusive and to exclusive
+         */
+        private final int from, to;
+
+        Normalize(float scale, int from, int to) {
+            this.scale = scale;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TILE * TILE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Normalize(scale, from, mid), new Normalize(scale, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                grid[i] *= scale;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package model;
+
+/**
+ * Projects a found stronghold onto the positions of the other strongholds in its ring without any trigonometric
+ * calls. Every ring has a fixed number of strongholds spaced an equal angle apart, so the rotation from the found
+ * stronghold to each of the others is the same for every stronghold in the ring. The cosine and sine of those
+ * rotations are calculated once per ring when the {@link RingTables} are compiled, and a projection only has to
+ * rotate the unit vector of the found stronghold through the table and scale it to the average distance of the
+ * ring.
+ * <p>
+ * Predictions are written to caller supplied arrays in order of increasing angle from the found stronghold, so
+ * the entry at index off + k - 1 is the stronghold k slots away from the found stronghold.
+ */
+public final class ProjectionKernel {
+    private ProjectionKernel() {
+    }
+
+    /**
+     * Writes the block coordinates of the other strongholds in the ring to the arrays starting at off. The values
+     * are rounded to whole overworld blocks the same way the original calculation was, then divided by 8 if they
+     * should be nether coordinates.
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @param outX Output for the x coordinates
+     * @param outZ Output for the z coordinates
+     * @param off Index of the arrays to write the first prediction to
+     * @return The number of predictions written, one less than the number of strongholds in the ring
+     */
+    public static int project(Ring ring, double x, double z, boolean nether, double[] outX, double[] outZ,
+                              int off) {
+        return project(RingTables.current(), ring, x, z, nether, outX, outZ, off);
+    }
+
+    /**
+     * Same as {@link #project(Ring, double, double, boolean, double[], double[], int)} with the given tables, for
+     * callers that size their arrays from the tables and must not see a different config part way through
+     *
+     * @param tables The ring tables to use
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @param outX Output for the x coordinates
+     * @param outZ Output for the z coordinates
+     * @param off Index of the arrays to write the first prediction to
+     * @return The number of predictions written, one less than the number of strongholds in the ring
+     */
+    public static int project(RingTables tables, Ring ring, double x, double z, boolean nether, double[] outX,
+                              double[] outZ, int off) {
+        double[] cos = tables.cos;
+        double[] sin = tables.sin;
+        int from = tables.offset[ring.ordinal()];
+        int n = tables.offset[ring.ordinal() + 1] - from;
+        double len = Math.sqrt(x * x + z * z);
+        //a stronghold exactly at the origin has no direction, treat it as straight north
+        double ux = len == 0 ? 0 : x / len;
+        double uz = len == 0 ? -1 : z / len;
+        double dist = tables.average[ring.ordinal()];
+        double scale = nether ? 8 : 1;
+        for (int k = 0; k < n; k++) {
+            outX[off + k] = round((ux * cos[from + k] - uz * sin[from + k]) * dist) / scale;
+            outZ[off + k] = round((uz * cos[from + k] + ux * sin[from + k]) * dist) / scale;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the overworld chunk coordinates of the other strongholds in the ring to the arrays starting at off.
+     * These are the chunks containing the block coordinates that {@link #project} gives for the overworld.
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param outX Output for the chunk x coordinates
+     * @param outZ Output for the chunk z coordinates
+     * @param off Index of the arrays to write the first prediction to
+     * @return The number of predictions written, one less than the number of strongholds in the ring
+     */
+    public static int projectChunks(Ring ring, double x, double z, int[] outX, int[] outZ, int off) {
+        return projectChunks(RingTables.current(), ring, x, z, outX, outZ, off);
+    }
+
+    /**
+     * Same as {@link #projectChunks(Ring, double, double, int[], int[], int)} with the given tables
+     *
+     * @param tables The ring tables to use
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @param outX Output for the chunk x coordinates
+     * @param outZ Output for the chunk z coordinates
+     * @param off Index of the arrays to write the first prediction to
+     * @return The number of predictions written, one less than the number of strongholds in the ring
+     */
+    public static int projectChunks(RingTables tables, Ring ring, double x, double z, int[] outX, int[] outZ,
+                                    int off) {
+        double[] cos = tables.cos;
+        double[] sin = tables.sin;
+        int from = tables.offset[ring.ordinal()];
+        int n = tables.offset[ring.ordinal() + 1] - from;
+        double len = Math.sqrt(x * x + z * z);
+        double ux = len == 0 ? 0 : x / len;
+        double uz = len == 0 ? -1 : z / len;
+        double dist = tables.average[ring.ordinal()];
+        for (int k = 0; k < n; k++) {
+            outX[off + k] = Math.floorDiv((int) round((ux * cos[from + k] - uz * sin[from + k]) * dist), 16);
+            outZ[off + k] = Math.floorDiv((int) round((uz * cos[from + k] + ux * sin[from + k]) * dist), 16);
+        }
+        return n;
+    }
+
+    //Rounds half away from zero, which is what rounding the absolute value and restoring the sign used to do
+    static double round(double d) {
+        return d < 0 ? -Math.round(-d) : Math.round(d);
+    }
+}
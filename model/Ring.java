@@ -2,67 +2,87 @@ package model;
 
 /**
  * Represents a ring where strongholds generate. Each ring holds the range of blocks from the origin
- * a stronghold can generate and the number of strongholds that generates in that ring.
+ * a stronghold can generate and the number of strongholds that generates in that ring. These come from the
+ * {@link RingTables} in use, which are the vanilla rings below unless a {@link RingConfig} was loaded:
+ * <pre>
+ * RING1  1280 -  2816 blocks   3 strongholds
+ * RING2  4352 -  5888 blocks   6 strongholds
+ * RING3  7424 -  8960 blocks  10 strongholds
+ * RING4 10496 - 12032 blocks  15 strongholds
+ * RING5 13568 - 15104 blocks  21 strongholds
+ * RING6 16640 - 18176 blocks  28 strongholds
+ * RING7 19712 - 21248 blocks  36 strongholds
+ * RING8 22784 - 24320 blocks   9 strongholds
+ * </pre>
  */
 public enum Ring {
 
-    RING1(1280, 2816, 3, 1),
-    RING2(4352, 5888, 6, 2),
-    RING3(7424, 8960, 10, 3),
-    RING4(10496, 12032, 15, 4),
-    RING5(13568, 15104, 21, 5),
-    RING6(16640, 18176, 28, 6),
-    RING7(19712, 21248, 36, 7),
-    RING8(22784, 24320, 9, 8);
+    RING1(1),
+    RING2(2),
+    RING3(3),
+    RING4(4),
+    RING5(5),
+    RING6(6),
+    RING7(7),
+    RING8(8);
 
     /**
-     * maximum distance from origin a stronghold will generate in the ring
-     */
-    private final int max;
-    /**
-     * minimum distance from origin a stronghold will generate in the ring
-     */
-    private final int min;
-    /**
-     * number of strongholds that generates in the ring
-     */
-    private final int numStrongholds;
-
-    /**
-     * Average of the min and max of this Stronghold
+     * What number ring this Ring is (1 through 8) - used for display purposes in GUI
      */
-    private final int averageDist;
+    private final int ringNum;
 
     /**
-     * What number ring this Ring is (1 through 8) - used for display purposes in GUI
+     * The rings in order, kept since values() copies the array every call
      */
-    private final int ringNum;
+    private static final Ring[] RINGS = values();
 
-    Ring(final int max, final int min, final int numStrongholds, final int ringNum) {
-        this.max = max;
-        this.min = min;
-        this.numStrongholds = numStrongholds;
+    Ring(final int ringNum) {
         this.ringNum = ringNum;
-        averageDist = (min + max) / 2;
     }
 
+    /**
+     * Gets the greatest distance from the origin a stronghold will generate in the ring
+     */
     public int getMax() {
-        return max;
+        return RingTables.current().getMax(this);
     }
 
+    /**
+     * Gets the least distance from the origin a stronghold will generate in the ring
+     */
     public int getMin() {
-        return min;
+        return RingTables.current().getMin(this);
     }
 
+    /**
+     * Gets the number of strongholds that generate in the ring, 0 if the rings in use end before this ring
+     */
     public int getNumStrongholds() {
-        return numStrongholds;
+        return RingTables.current().getNumStrongholds(this);
     }
 
     public int getRingNum() {
         return ringNum;
     }
 
+    /**
+     * Gets the distance from the origin of the center of the ring
+     */
     public double getAverageDistance() {
-        return averageDist;
+        return RingTables.current().getAverageDistance(this);
+    }
+
+    /**
+     * Gets a ring by its number
+     *
+     * @param n The number of the ring, 1 through the number of rings in use
+     * @return The ring
+     * @throws IllegalArgumentException If there is no ring with the number in the rings in use
+     */
+    public static Ring fromNumber(int n) {
+        int rings = RingTables.current().getRings();
+        if (n < 1 || n > rings)
+            throw new IllegalArgumentException("Invalid ring number, must be 1-" + rings + ".");
+        return RINGS[n - 1];
     }
 }
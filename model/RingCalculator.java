@@ -1,7 +1,12 @@
 package model;
 
 
+import metrics.Metrics;
+
+import java.io.Serial;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class does all calculations that actually make the program function using various methods to process
@@ -12,6 +17,20 @@ import java.util.HashSet;
  * @author Matthew Welker
  */
 public class RingCalculator {
+    /**
+     * Largest number of predictions a single found stronghold can produce (RING7 minus the found stronghold), a
+     * RingConfig cannot have a ring with more. Used as the row stride of the output arrays given to the batch
+     * calculation.
+     */
+    public static final int MAX_PREDICTIONS = 35;
+    /**
+     * Number of rows below which a batch calculation is no longer split into smaller fork-join tasks
+     */
+    private static final int BATCH_THRESHOLD = 2048;
+    /**
+     * The rings in order, kept since values() copies the array every call
+     */
+    private static final Ring[] RINGS = Ring.values();
     /**
      * x coordinate of the stronghold that has been found
      */
@@ -82,15 +101,7 @@ public class RingCalculator {
      * @throws IllegalArgumentException If the ring given is not a valid ring (1 to 8)
      */
     public void setRing(int n) {
-        if (n < 1 || n > 8) {
-            throw new IllegalArgumentException("Invalid ring number, must be 1-8.");
-        }
-        for (Ring r : Ring.values()) {
-            if (r.getRingNum() == n) {
-                ring = r;
-                return;
-            }
-        }
+        ring = Ring.fromNumber(n);
     }
 
     /**
@@ -98,28 +109,54 @@ public class RingCalculator {
      * This method assumes that the stronghold snaps outside the ring meaning that the ring could not be
      * set by the ringCoords() method.
      * The guess is made by calculating the distance from the origin and finding which ring has the closest
-     * minimum or maximum Stronghold spawn distance.
+     * minimum or maximum Stronghold spawn distance. Only the time taken is recorded, the guess is counted as a
+     * fallback where it is used for a prediction.
      *
      * @param x The x coordinate of the supposed Stronghold
      * @param z The z coordinate of the supposed Stronghold
      * @return The Ring that the set of coordinates is estimated to be in
      */
     public Ring guessRing(double x, double z) {
-        double dist = Math.sqrt(Math.pow(x, 2) + Math.pow(z, 2));
-        if (dist < Ring.RING1.getMin())
-            return Ring.RING1;
-        //check if dist is between one min and another max, if so see which is closer
-        for (int i = 0; i < Ring.values().length - 1; i++) {
-            Ring r1 = Ring.values()[i];
-            Ring r2 = Ring.values()[i + 1];
-            if (dist > r1.getMax() && dist < r2.getMin()) {
-                if (dist - r1.getMin() < r2.getMax() - dist) {
-                    return r1;
-                }
-                return r2;
-            }
+        if (!Metrics.ENABLED)
+            return guess(RingTables.current(), x, z);
+        long t0 = Metrics.start();
+        Ring r = guess(RingTables.current(), x, z);
+        Metrics.record(Metrics.Op.GUESS_RING, r.getRingNum(), t0);
+        return r;
+    }
+
+    /**
+     * Gets the ring guessRing would guess for a set of coordinates without recording any metrics, for callers that
+     * only want to know which ring coordinates are nearest to
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return The ring the coordinates are in, or the nearest ring if they are in a gap
+     */
+    public static Ring nearestRing(double x, double z) {
+        return guess(RingTables.current(), x, z);
+    }
+
+    /**
+     * Gets the ring a set of coordinates is in the same as getRing, but without recording any metrics or throwing
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return The ring the coordinates are in, null if they are not within the bounds of a ring
+     */
+    public static Ring findRing(double x, double z) {
+        return findRing(RingTables.current(), x, z);
+    }
+
+    //Shared by guessRing and the batch calculation, which has no RingCalculator instance
+    private static Ring guess(RingTables t, double x, double z) {
+        double dist2 = x * x + z * z;
+        //the first ring whose gap halfway point is farther out, anything past the last gap is in the last ring
+        for (int i = 0; i < t.rings - 1; i++) {
+            if (dist2 < t.middle2[i])
+                return RINGS[i];
         }
-        return Ring.RING8;
+        return RINGS[t.rings - 1];
     }
 
     /**
@@ -131,12 +168,75 @@ public class RingCalculator {
      * @throws IllegalCoordsException If the coordinates are not within the bounds of a ring
      */
     public static Ring getRing(double x, double z) throws IllegalCoordsException {
-        double dist = Math.round(Math.sqrt(Math.pow(x, 2) + Math.pow(z, 2)));
-        for (Ring r : Ring.values()) {
-            if (r.getMin() > dist && r.getMax() < dist)
-                return r;
+        long t0 = Metrics.ENABLED ? Metrics.start() : 0;
+        Ring r = findRing(RingTables.current(), x, z);
+        if (Metrics.ENABLED)
+            Metrics.record(Metrics.Op.GET_RING, r == null ? 0 : r.getRingNum(), t0);
+        if (r == null) {
+            if (Metrics.ENABLED)
+                Metrics.illegalCoords(x, z);
+            throw new IllegalCoordsException("Coordinates not inside of a Stronghold Ring");
+        }
+        return r;
+    }
+
+    /**
+     * Picks the ring for a found stronghold the way a policy says to. Unlike guessRing and setRing nothing is
+     * stored, so the same call can be made from any thread.
+     *
+     * @param found The coordinates of the found stronghold, measured the same way as the ones given to the
+     * constructor
+     * @param policy How to pick the ring
+     * @return The ring
+     * @throws IllegalCoordsException If the policy is STRICT and the coordinates are not inside of a ring
+     */
+    public static Ring ringFor(Position found, RingPolicy policy) throws IllegalCoordsException {
+        if (policy.kind() == RingPolicy.Kind.FIXED)
+            return policy.ring();
+        if (policy.kind() == RingPolicy.Kind.STRICT)
+            return getRing(found.x(), found.z());
+        RingTables t = RingTables.current();
+        Ring r = findRing(t, found.x(), found.z());
+        if (r != null)
+            return r;
+        r = policy.kind() == RingPolicy.Kind.GUESS ? guess(t, found.x(), found.z()) : policy.ring();
+        if (Metrics.ENABLED)
+            Metrics.fallback(policy.kind() == RingPolicy.Kind.GUESS ? Metrics.Fallback.GUESS
+                                                                    : Metrics.Fallback.MANUAL, r.getRingNum());
+        return r;
+    }
+
+    /**
+     * Calculates the strongholds for a found stronghold without any state, the immutable version of creating a
+     * RingCalculator, setting its ring and calling calcStrongholds. The result can be cached and shared between
+     * threads, and two calculations of the same stronghold give equal Predictions.
+     *
+     * @param found The coordinates of the found stronghold, measured the same way as the ones given to the
+     * constructor
+     * @param policy How to pick the ring
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @return The predicted strongholds
+     * @throws IllegalCoordsException If the policy is STRICT and the coordinates are not inside of a ring
+     */
+    public static Prediction calculate(Position found, RingPolicy policy, boolean nether)
+            throws IllegalCoordsException {
+        Ring ring = ringFor(found, policy);
+        long t0 = Metrics.ENABLED ? Metrics.start() : 0, a0 = Metrics.ENABLED ? Metrics.allocated() : 0;
+        //same chunk center offset as the constructor
+        Prediction p = new Prediction(RingTables.current(), ring, found.x() + 4, found.z() + 4, nether);
+        if (Metrics.ENABLED)
+            Metrics.record(Metrics.Op.CALC_STRONGHOLDS, ring.getRingNum(), t0, a0);
+        return p;
+    }
+
+    //Same as getRing but returns null instead of throwing, so the batch calculation can fail a row cheaply
+    private static Ring findRing(RingTables t, double x, double z) {
+        double dist2 = x * x + z * z;
+        for (int i = 0; i < t.rings; i++) {
+            if (dist2 >= t.inner2[i] && dist2 < t.outer2[i])
+                return RINGS[i];
         }
-        throw new IllegalCoordsException("Coordinates not inside of a Stronghold Ring");
+        return null;
     }
 
     /**
@@ -147,86 +247,176 @@ public class RingCalculator {
      * @return A HashSet of ideal nether travel coordinates or overworld coordinates
      */
     public HashSet<Coords> calcStrongholds(boolean nether) {
-        double angleBetween = 360.0 / ring.getNumStrongholds(); //The angle between strongholds
-        int dist = (ring.getMax() + ring.getMin()) / 2; //Mean distance in the ring for the Stronghold
-        double angle = getAngle();
-        double temp = angle; //temp value to use for calculations
+        if (!Metrics.ENABLED)
+            return project(nether);
+        long t0 = Metrics.start(), a0 = Metrics.allocated();
+        HashSet<Coords> coords = project(nether);
+        Metrics.record(Metrics.Op.CALC_STRONGHOLDS, ring.getRingNum(), t0, a0);
+        return coords;
+    }
+
+    //The calculation of calcStrongholds, kept separate so it can be measured
+    private HashSet<Coords> project(boolean nether) {
+        double[] xs = new double[MAX_PREDICTIONS];
+        double[] zs = new double[MAX_PREDICTIONS];
+        int n = ProjectionKernel.project(ring, x, z, nether, xs, zs, 0);
         HashSet<Coords> coords = new HashSet<>();
-        //get all other coordinate values
-        temp += angleBetween;
-        while (temp < 180) {
-            coords.add(getCoords(temp, dist, nether));
-            temp += angleBetween;
-        }
-        temp = angle;
-        temp -= angleBetween;
-        while (temp > -180) {
-            coords.add(getCoords(temp, dist, nether));
-            temp -= angleBetween;
+        for (int i = 0; i < n; i++) {
+            coords.add(new Coords(xs[i], zs[i]));
         }
         return coords;
     }
 
-    //Returns the angle from the origin this stronghold is in
-    //uses the x and z values
-    private double getAngle() {
-        double angle = -180.0; //to be returned, is default for when x=0 and z<0
-        //Formula based on soh-cah-toa for MC coord system
-        if (z > 0) {
-            angle = Math.toDegrees(Math.atan(x / z));
-        } else {
-            if (x != 0) {
-                angle = Math.abs(Math.toDegrees(Math.atan(z / x)));
-                if (angle > 0)
-                    angle += 90;
-                else
-                    angle -= 90;
+    /**
+     * Does the same calculation as calcStrongholds but keeps the result as a compact StrongholdSet of chunk
+     * positions, which can be converted to either dimension when displayed
+     *
+     * @return The predicted strongholds indexed by slot
+     */
+    public StrongholdSet calcStrongholdSet() {
+        if (!Metrics.ENABLED)
+            return StrongholdSet.predict(ring, x, z);
+        long t0 = Metrics.start(), a0 = Metrics.allocated();
+        StrongholdSet set = StrongholdSet.predict(ring, x, z);
+        Metrics.record(Metrics.Op.CALC_STRONGHOLD_SET, ring.getRingNum(), t0, a0);
+        return set;
+    }
+
+    /**
+     * Calculates the strongholds for many found strongholds at once, splitting the rows across all cores with
+     * fork-join. The coordinates are given as columns, so row i is the stronghold found at (xs[i], zs[i]), measured
+     * the same way as the coordinates given to the constructor.
+     * <p>
+     * The predictions for row i are written to outX and outZ starting at index i * MAX_PREDICTIONS, and rings[i]
+     * is set to the number of the ring used for that row. Only the first (number of strongholds in the ring - 1)
+     * entries of a row are written. A row that is not inside a Stronghold ring is guessed when guess is true,
+     * otherwise its ring is set to 0 and none of its predictions are written.
+     *
+     * @param xs The x coordinates of the found strongholds
+     * @param zs The z coordinates of the found strongholds
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @param guess Whether to guess the ring of rows that are not inside of a ring instead of failing them
+     * @param rings Output for the ring number of each row, 0 if the row failed
+     * @param outX Output for the x coordinates of the predictions, at least xs.length * MAX_PREDICTIONS long
+     * @param outZ Output for the z coordinates of the predictions, at least xs.length * MAX_PREDICTIONS long
+     * @return The number of rows that failed because they were not inside of a ring
+     * @throws IllegalArgumentException If any of the arrays are too short for the number of rows
+     */
+    public static int calcStrongholds(double[] xs, double[] zs, boolean nether, boolean guess, int[] rings,
+                                      double[] outX, double[] outZ) {
+        return calcStrongholds(RingTables.current(), xs, zs, nether, guess, rings, outX, outZ);
+    }
+
+    /**
+     * Same as {@link #calcStrongholds(double[], double[], boolean, boolean, int[], double[], double[])} with the
+     * given tables, for callers that read the number of predictions of each row from the tables afterwards
+     *
+     * @param tables The ring tables to use
+     * @param xs The x coordinates of the found strongholds
+     * @param zs The z coordinates of the found strongholds
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @param guess Whether to guess the ring of rows that are not inside of a ring instead of failing them
+     * @param rings Output for the ring number of each row, 0 if the row failed
+     * @param outX Output for the x coordinates of the predictions, at least xs.length * MAX_PREDICTIONS long
+     * @param outZ Output for the z coordinates of the predictions, at least xs.length * MAX_PREDICTIONS long
+     * @return The number of rows that failed because they were not inside of a ring
+     * @throws IllegalArgumentException If any of the arrays are too short for the number of rows
+     */
+    public static int calcStrongholds(RingTables tables, double[] xs, double[] zs, boolean nether, boolean guess,
+                                      int[] rings, double[] outX, double[] outZ) {
+        int rows = xs.length;
+        if (zs.length < rows || rings.length < rows)
+            throw new IllegalArgumentException("Input and ring arrays must have a value for every row");
+        if (outX.length / MAX_PREDICTIONS < rows || outZ.length / MAX_PREDICTIONS < rows)
+            throw new IllegalArgumentException("Output arrays must hold " + MAX_PREDICTIONS + " values per row");
+        long t0 = Metrics.ENABLED ? Metrics.start() : 0;
+        BatchTask task = new BatchTask(tables, xs, zs, nether, guess, rings, outX, outZ, 0, rows);
+        ForkJoinPool.commonPool().invoke(task);
+        if (Metrics.ENABLED)
+            Metrics.record(Metrics.Op.CALC_BATCH, 0, t0);
+        return task.failed;
+    }
+
+    /**
+     * Fork-join task that calculates a range of rows of a batch calculation, splitting in half until the range is
+     * small enough to calculate directly.
+     */
+    private static class BatchTask extends RecursiveAction {
+        /**
+         * Serial Version ID
+         */
+        @Serial
+        private static final long serialVersionUID = 1L;
+        /**
+         * Ring tables used by every task of the calculation
+         */
+        private final transient RingTables tables;
+        /**
+         * Input and output arrays shared by every task of the calculation
+         */
+        private final double[] xs, zs, outX, outZ;
+        /**
+         * Ring number output shared by every task of the calculation
+         */
+        private final int[] rings;
+        /**
+         * Whether to have the coordinates as nether coordinates or not
+         */
+        private final boolean nether;
+        /**
+         * Whether to guess the ring of rows that are not inside of a ring
+         */
+        private final boolean guess;
+        /**
+         * First row (inclusive) and last row (exclusive) this task calculates
+         */
+        private final int from, to;
+        /**
+         * Number of rows in this task's range that failed, valid once the task is done
+         */
+        private int failed;
+
+        BatchTask(RingTables tables, double[] xs, double[] zs, boolean nether, boolean guess, int[] rings,
+                  double[] outX, double[] outZ, int from, int to) {
+            this.tables = tables;
+            this.xs = xs;
+            this.zs = zs;
+            this.nether = nether;
+            this.guess = guess;
+            this.rings = rings;
+            this.outX = outX;
+            this.outZ = outZ;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                BatchTask left = new BatchTask(tables, xs, zs, nether, guess, rings, outX, outZ, from, mid);
+                BatchTask right = new BatchTask(tables, xs, zs, nether, guess, rings, outX, outZ, mid, to);
+                invokeAll(left, right);
+                failed = left.failed + right.failed;
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Ring ring = findRing(tables, xs[i], zs[i]);
+                if (ring == null && guess) {
+                    ring = guess(tables, xs[i], zs[i]);
+                    if (Metrics.ENABLED)
+                        Metrics.fallback(Metrics.Fallback.GUESS, ring.getRingNum());
+                }
+                if (ring == null) {
+                    rings[i] = 0;
+                    failed++;
+                    continue;
+                }
+                rings[i] = ring.getRingNum();
+                //same chunk center offset as the constructor
+                ProjectionKernel.project(tables, ring, xs[i] + 4, zs[i] + 4, nether, outX, outZ,
+                                         i * MAX_PREDICTIONS);
             }
         }
-        //pos x means negative angle
-        if (x > 0)
-            angle *= -1;
-        return angle;
-    }
-
-    //Gets a set of coordinates (overworld) based on angle and distance
-    //throws IAE if angle is not valid (between -180 and 180)
-    private Coords getCoords(double angle, int dist, boolean nether) {
-        if (-180 > angle || 180 < angle)
-            throw new IllegalArgumentException("Invalid angle");
-        Coords c;
-        //Cases when one is 0
-        if (angle == 0) c = new Coords(0, dist);
-        else if (angle == 90) c = new Coords(-1 * dist, 0);
-        else if (angle == -90) c = new Coords(dist, 0);
-        else if (angle == -180) c = new Coords(0, -1 * dist);
-            //all other cases
-        else if (angle > 0 && angle < 90)
-            c = new Coords(-1 * trig(0, angle, dist), trig(1, angle, dist));
-        else if (angle > 90 && angle < 180)
-            c = new Coords(-1 * trig(1, 90 - angle, dist), -1 * trig(0, 90 - angle, dist));
-        else if (angle > -90 && angle < 0)
-            c = new Coords(trig(0, angle * -1, dist), trig(1, angle * -1, dist));
-        else
-            c = new Coords(trig(1, 90 - (angle * -1), dist), -1 * trig(0, 90 - (angle * -1), dist));
-        if (nether)
-            c.convertNether();
-        return c;
-    }
-
-    /**
-     * Gets value x for function sin(angle) = x/h or cos(angle) = x/h based on input
-     * For int value, 0 means sin and 1 means cos, anything else results in IAE
-     *
-     * @throws IllegalArgumentException If f is not 0 or 1
-     */
-    private static double trig(int f, double angle, int hyp) {
-        double d = Math.toRadians(angle);
-        return switch (f) {
-            case 0 -> Math.round(Math.abs(Math.sin(d)) * hyp);
-            case 1 -> Math.round(Math.abs(Math.cos(d)) * hyp);
-            default ->
-                    throw new UnsupportedOperationException("Illegal function value, must be 0 or 1");
-        };
     }
 }
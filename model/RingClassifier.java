@@ -0,0 +1,199 @@
+package model;
+
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Works out how likely a found stronghold is to be in each ring, for coordinates that are not inside of a ring.
+ * A stronghold snaps to the start of its staircase, so it can end up a little outside of its ring. Inside a ring the
+ * classifier is certain, in the gap between two rings the chance moves from the inner ring to the outer ring along
+ * a logistic curve centered halfway across the gap. That is the chance given by treating the snapping as logistic
+ * noise of width SPREAD on both edges of the gap, and the rings further away are too far for the noise to reach.
+ * <p>
+ * Everything is done on the squared distance from the origin with the thresholds of the {@link RingTables} in use,
+ * so no square root is taken. The most likely ring is
+ * always the ring {@link RingCalculator#getRing} finds, or the ring {@link RingCalculator#guessRing} guesses when
+ * the coordinates are not inside of one.
+ */
+public final class RingClassifier {
+    /**
+     * Width in blocks of the logistic noise added by snapping, the outer ring is 88% likely 128 blocks past the
+     * middle of a gap and 98% likely 256 blocks past it
+     */
+    public static final double SPREAD = 128;
+    /**
+     * Default least confidence a ring needs to be given as a hypothesis
+     */
+    public static final double MIN_CONFIDENCE = 0.01;
+    /**
+     * The rings in order, kept since values() copies the array every call
+     */
+    private static final Ring[] RINGS = Ring.values();
+
+    private RingClassifier() {
+    }
+
+    /**
+     * A ring the found stronghold could be in along with its predictions
+     *
+     * @param ring The ring
+     * @param confidence Chance between 0 and 1 that the found stronghold is in the ring
+     * @param prediction The predictions if the found stronghold is in the ring
+     */
+    public record Hypothesis(Ring ring, double confidence, Prediction prediction) {
+        @Override
+        public String toString() {
+            return label(ring, confidence);
+        }
+    }
+
+    /**
+     * Gets the chance of a found stronghold being in each ring
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @param confidence Output for the chance of each ring, indexed by ring ordinal, at least 8 long
+     * @return The ordinal of the most likely ring
+     * @throws IllegalArgumentException If the output array is too short
+     */
+    public static int classify(double x, double z, double[] confidence) {
+        if (confidence.length < RINGS.length)
+            throw new IllegalArgumentException("Confidence array must have a value for every ring");
+        long t0 = Metrics.ENABLED ? Metrics.start() : 0;
+        Arrays.fill(confidence, 0, RINGS.length, 0);
+        int best = classify(RingTables.current(), x * x + z * z, confidence);
+        if (Metrics.ENABLED)
+            Metrics.record(Metrics.Op.CLASSIFY, best + 1, t0);
+        return best;
+    }
+
+    /**
+     * Gets the chance of a found stronghold being in each ring
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @return The chance of each ring, indexed by ring ordinal
+     */
+    public static double[] confidences(double x, double z) {
+        double[] confidence = new double[RINGS.length];
+        classify(x, z, confidence);
+        return confidence;
+    }
+
+    /**
+     * Gets the rings a found stronghold could be in, most likely first, along with the predictions of each. The
+     * most likely ring is always given, the others only if they are likely enough.
+     *
+     * @param x x coordinate
+     * @param z z coordinate
+     * @param nether Whether to have the predictions as nether coordinates or not
+     * @param minConfidence Least chance a ring other than the most likely one needs to be given
+     * @return The hypotheses, most likely first
+     */
+    public static Hypothesis[] hypotheses(double x, double z, boolean nether, double minConfidence) {
+        double[] confidence = new double[RINGS.length];
+        int best = classify(x, z, confidence);
+        Ring[] ranked = rank(confidence, best);
+        int n = 1;
+        while (n < ranked.length) {
+            double c = confidence[ranked[n].ordinal()];
+            if (c == 0 || c < minConfidence)
+                break;
+            n++;
+        }
+        Hypothesis[] hypotheses = new Hypothesis[n];
+        for (int i = 0; i < n; i++) {
+            //predictions are made from the chunk center, the same as RingCalculator
+            hypotheses[i] = new Hypothesis(ranked[i], confidence[ranked[i].ordinal()],
+                                           new Prediction(ranked[i], x + 4, z + 4, nether));
+        }
+        return hypotheses;
+    }
+
+    /**
+     * Gets every ring in use ordered from most to least likely. Rings with the same chance are ordered by how close
+     * they are to the most likely ring, so the rings next to it come first.
+     *
+     * @param confidence The chance of each ring from {@link #classify(double, double, double[])}
+     * @param best The ordinal of the most likely ring
+     * @return Every ring in use, most likely first
+     */
+    public static Ring[] rank(double[] confidence, int best) {
+        Ring[] ranked = RingTables.current().rings();
+        Arrays.sort(ranked, (a, b) -> {
+            int c = Double.compare(confidence[b.ordinal()], confidence[a.ordinal()]);
+            if (c != 0)
+                return c;
+            c = Integer.compare(Math.abs(a.ordinal() - best), Math.abs(b.ordinal() - best));
+            return c != 0 ? c : Integer.compare(a.ordinal(), b.ordinal());
+        });
+        return ranked;
+    }
+
+    /**
+     * Classifies many found strongholds at once. The coordinates are given as columns, so row i is the stronghold
+     * found at (xs[i], zs[i]). Rows with a confidence below 1 are between two rings, {@link #hypotheses} gives both.
+     *
+     * @param xs The x coordinates of the found strongholds
+     * @param zs The z coordinates of the found strongholds
+     * @param rings Output for the number of the most likely ring of each row
+     * @param confidence Output for the chance of the most likely ring of each row
+     * @throws IllegalArgumentException If any of the arrays are too short for the number of rows
+     */
+    public static void classify(double[] xs, double[] zs, int[] rings, double[] confidence) {
+        int rows = xs.length;
+        if (zs.length < rows || rings.length < rows || confidence.length < rows)
+            throw new IllegalArgumentException("Every array must have a value for every row");
+        double[] scratch = new double[RINGS.length];
+        RingTables t = RingTables.current();
+        for (int i = 0; i < rows; i++) {
+            int best = classify(t, xs[i] * xs[i] + zs[i] * zs[i], scratch);
+            rings[i] = best + 1;
+            confidence[i] = scratch[best];
+            scratch[best] = 0;
+            if (best + 1 < t.rings) //the only other ring that can be likely
+                scratch[best + 1] = 0;
+            if (best > 0)
+                scratch[best - 1] = 0;
+        }
+    }
+
+    /**
+     * Gives a ring and its chance the way the GUI shows them, such as "Ring 2 (67%)"
+     *
+     * @param ring The ring
+     * @param confidence Chance between 0 and 1 that the found stronghold is in the ring
+     * @return The label
+     */
+    public static String label(Ring ring, double confidence) {
+        String percent;
+        if (confidence > 0 && confidence < 0.01)
+            percent = "<1%";
+        else if (confidence < 1 && confidence > 0.99)
+            percent = ">99%";
+        else
+            percent = String.format(Locale.ROOT, "%.0f%%", confidence * 100);
+        return "Ring " + ring.getRingNum() + " (" + percent + ")";
+    }
+
+    //Writes the nonzero chances into an array that is all zeros and returns the ordinal of the most likely ring
+    private static int classify(RingTables t, double dist2, double[] confidence) {
+        for (int i = 0; i < t.rings - 1; i++) {
+            if (dist2 < t.outer2[i]) { //inside the ring, or before the first ring
+                confidence[i] = 1;
+                return i;
+            }
+            if (dist2 < t.inner2[i + 1]) { //in the gap after the ring
+                //2 * (d - middle) / SPREAD without the square root, d^2 - middle^2 is about 2 * middle * (d - middle)
+                double outer = 1 / (1 + Math.exp(-(dist2 - t.middle2[i]) / (t.middle[i] * SPREAD)));
+                confidence[i] = 1 - outer;
+                confidence[i + 1] = outer;
+                return dist2 < t.middle2[i] ? i : i + 1;
+            }
+        }
+        confidence[t.rings - 1] = 1;
+        return t.rings - 1;
+    }
+}
@@ -0,0 +1,128 @@
+package model;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The concentric rings parameters that decide where strongholds generate, the same three numbers as the
+ * {@code minecraft:concentric_rings} structure placement of a datapack. Modded and datapack servers can change
+ * them, so they can be loaded from a file and compiled into the {@link RingTables} the calculations use.
+ * <p>
+ * Strongholds are placed in rings around the origin. The first ring holds spread strongholds and every ring after
+ * it holds 2 * spread / (ring number) more than the ring before, until count strongholds have been placed. Ring i
+ * (counting from 0) is centered (4 + 6i) * distance chunks from the origin, and the generation spreads it 1.25 *
+ * distance chunks either side of its center. The vanilla values are a distance of 32, a spread of 3 and a count of
+ * 128, which give the 8 rings of the {@link Ring} enum.
+ * <p>
+ * A file can be a properties file with distance, spread and count keys, where a missing key keeps its vanilla
+ * value, or the JSON of a datapack's structure set, where the keys of the placement are read.
+ *
+ * @param distance Distance between rings in chunks, 1 to 1023
+ * @param spread Number of strongholds in the first ring, 1 to 1023
+ * @param count Number of strongholds in every ring together, 1 to 4095
+ */
+public record RingConfig(int distance, int spread, int count) {
+    /**
+     * The parameters of an unmodified game
+     */
+    public static final RingConfig VANILLA = new RingConfig(32, 3, 128);
+    /**
+     * Value of a JSON key that was not found
+     */
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    /**
+     * Checks the parameters are in the ranges the game allows
+     *
+     * @throws IllegalArgumentException If a parameter is out of range
+     */
+    public RingConfig {
+        if (distance < 1 || distance > 1023)
+            throw new IllegalArgumentException("Ring distance must be 1-1023.");
+        if (spread < 1 || spread > 1023)
+            throw new IllegalArgumentException("Ring spread must be 1-1023.");
+        if (count < 1 || count > 4095)
+            throw new IllegalArgumentException("Stronghold count must be 1-4095.");
+    }
+
+    /**
+     * Loads the parameters from a file, JSON if the name ends with .json and properties otherwise
+     *
+     * @param file The file to read
+     * @return The parameters
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a parameter is not a number or out of range
+     */
+    public static RingConfig load(Path file) throws IOException {
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        return file.getFileName().toString().endsWith(".json") ? parseJson(text) : parseProperties(text);
+    }
+
+    /**
+     * Reads the parameters from the text of a properties file. Keys that are not given keep their vanilla value.
+     *
+     * @param text The properties
+     * @return The parameters
+     * @throws IllegalArgumentException If a parameter is not a number or out of range
+     */
+    public static RingConfig parseProperties(String text) {
+        Properties p = new Properties();
+        try {
+            p.load(new StringReader(text));
+        } catch (IOException e) { //cannot happen reading a string
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return new RingConfig(number(p.getProperty("distance"), VANILLA.distance),
+                              number(p.getProperty("spread"), VANILLA.spread),
+                              number(p.getProperty("count"), VANILLA.count));
+    }
+
+    /**
+     * Reads the parameters from the JSON of a datapack's structure set, or of just its placement
+     *
+     * @param text The JSON
+     * @return The parameters
+     * @throws IllegalArgumentException If a key is missing or a parameter is out of range
+     */
+    public static RingConfig parseJson(String text) {
+        int distance = MISSING, spread = MISSING, count = MISSING;
+        //only the three keys are looked for, so nothing else in the file has to be understood
+        Matcher m = Pattern.compile("\"(distance|spread|count)\"\\s*:\\s*(-?\\d+)").matcher(text);
+        while (m.find()) {
+            int value = number(m.group(2), MISSING);
+            switch (m.group(1)) {
+                case "distance" -> distance = value;
+                case "spread" -> spread = value;
+                default -> count = value;
+            }
+        }
+        if (distance == MISSING || spread == MISSING || count == MISSING)
+            throw new IllegalArgumentException("The placement needs distance, spread and count.");
+        return new RingConfig(distance, spread, count);
+    }
+
+    /**
+     * Represents the parameters the way a properties file holds them
+     */
+    @Override
+    public String toString() {
+        return "distance=" + distance + ", spread=" + spread + ", count=" + count;
+    }
+
+    //Parses a parameter, giving the default if it is not there
+    private static int number(String s, int def) {
+        if (s == null)
+            return def;
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid ring parameter " + s);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Fits the angle of a whole ring from every stronghold the user has confirmed in it, instead of trusting the
+ * angle of the first one alone. A stronghold that snapped to a different biome can be off by a few degrees, and
+ * with only one stronghold that error is copied to every prediction, so as more are found the predictions for
+ * the remaining slots are moved to the angle that best fits all of them.
+ * <p>
+ * The strongholds of a ring with n strongholds repeat every 360/n degrees, so the fit is the circular mean of n
+ * times each confirmed angle, divided by n. Only the sum of the unit vectors of those angles is kept, so
+ * confirming a stronghold is O(1). A confirmation further from its nearest slot than the rejection limit is
+ * treated as an outlier and left out of the fit.
+ * <p>
+ * Slots are numbered the same way as {@link ProjectionKernel} and {@link StrongholdSet}: slot 0 is the first
+ * confirmed stronghold and slot k is k places after it in order of increasing angle.
+ */
+public class RingPhaseFitter {
+    /**
+     * The ring tables the fit was sized from
+     */
+    private final RingTables tables;
+    /**
+     * The ring being fitted
+     */
+    private final Ring ring;
+    /**
+     * Number of strongholds in the ring
+     */
+    private final int n;
+    /**
+     * Angle between neighbouring strongholds in radians
+     */
+    private final double step;
+    /**
+     * Distance from the origin of the center of the ring, where predictions are made
+     */
+    private final double dist;
+    /**
+     * Largest angle in radians a confirmation can be from its slot before it is rejected as an outlier
+     */
+    private final double rejectLimit;
+    /**
+     * Sum of the cosine and sine of n times each accepted angle
+     */
+    private double sumCos, sumSin;
+    /**
+     * Number of accepted confirmations
+     */
+    private int accepted;
+    /**
+     * Angle in radians of the first confirmation, anchors which slot is slot 0
+     */
+    private double anchor;
+    /**
+     * Fitted angle of slot 0 in radians
+     */
+    private double phase;
+    /**
+     * Angle in radians of the confirmation in each slot, NaN for slots that have not been confirmed
+     */
+    private final double[] confirmed;
+    /**
+     * Distance from the origin of the confirmation in each slot
+     */
+    private final double[] radius;
+    /**
+     * Projected coordinates of every slot at the fitted angle, reused by every projection
+     */
+    private final double[] projX, projZ;
+
+    /**
+     * Creates a fitter that rejects confirmations more than a quarter of the angle between strongholds from their
+     * slot
+     *
+     * @param ring The ring to fit
+     */
+    public RingPhaseFitter(Ring ring) {
+        this(ring, 90.0 / ring.getNumStrongholds());
+    }
+
+    /**
+     * Creates a fitter
+     *
+     * @param ring The ring to fit
+     * @param rejectDegrees Largest angle in degrees a confirmation can be from its slot before it is rejected
+     * @throws IllegalArgumentException If the rejection limit is not positive
+     */
+    public RingPhaseFitter(Ring ring, double rejectDegrees) {
+        this(RingTables.current(), ring, rejectDegrees);
+    }
+
+    //Creates a fitter with the given ring tables, for callers that size their own arrays from the same tables
+    RingPhaseFitter(RingTables t, Ring ring, double rejectDegrees) {
+        if (!(rejectDegrees > 0))
+            throw new IllegalArgumentException("Rejection limit must be positive");
+        tables = t;
+        this.ring = ring;
+        n = t.getNumStrongholds(ring);
+        step = t.step[ring.ordinal()];
+        dist = t.getAverageDistance(ring);
+        rejectLimit = Math.toRadians(rejectDegrees);
+        confirmed = new double[n];
+        radius = new double[n];
+        projX = new double[n];
+        projZ = new double[n];
+        Arrays.fill(confirmed, Double.NaN);
+    }
+
+    /**
+     * Gets the ring being fitted
+     */
+    public Ring getRing() {
+        return ring;
+    }
+
+    /**
+     * Confirms a stronghold. The coordinates are measured the same way as the ones given to RingCalculator.
+     *
+     * @param x The x coordinate of the confirmed stronghold
+     * @param z The z coordinate of the confirmed stronghold
+     * @return The slot of the stronghold, or -1 if it was rejected as an outlier or its slot is already confirmed
+     */
+    public int confirm(double x, double z) {
+        //same chunk center offset as RingCalculator's constructor
+        x += 4;
+        z += 4;
+        return accept(Math.atan2(z, x), Math.sqrt(x * x + z * z));
+    }
+
+    /**
+     * Confirms a stronghold from its direction from the origin, such as where the line of an Eye of Ender thrown
+     * near it crosses the ring. The angle is of the chunk center, so no offset is added.
+     *
+     * @param angle The angle of the confirmed stronghold in degrees, measured from the positive x axis toward the
+     * positive z axis
+     * @param dist The distance of the confirmed stronghold from the origin
+     * @return The slot of the stronghold, or -1 if it was rejected as an outlier or its slot is already confirmed
+     */
+    public int confirmAngle(double angle, double dist) {
+        return accept(Math.toRadians(angle), dist);
+    }
+
+    //Adds a confirmation at an angle in radians to the fit
+    private int accept(double angle, double dist) {
+        if (accepted == 0) {
+            anchor = angle;
+            phase = angle;
+        }
+        int slot = slotOf(angle);
+        if (!Double.isNaN(confirmed[slot]) || Math.abs(residual(angle, slot)) > rejectLimit)
+            return -1;
+        confirmed[slot] = angle;
+        radius[slot] = dist;
+        sumCos += Math.cos(n * angle);
+        sumSin += Math.sin(n * angle);
+        accepted++;
+        //the mean only gives the angle modulo step, keep slot 0 as close to the first confirmation as possible
+        double mod = Math.atan2(sumSin, sumCos) / n;
+        phase = anchor + wrap(mod - anchor, step);
+        return slot;
+    }
+
+    /**
+     * Gets the number of confirmations accepted into the fit
+     */
+    public int getConfirmedCount() {
+        return accepted;
+    }
+
+    /**
+     * Whether a slot has been confirmed
+     *
+     * @param slot The slot to check
+     */
+    public boolean isConfirmed(int slot) {
+        return !Double.isNaN(confirmed[slot]);
+    }
+
+    /**
+     * Gets the fitted angle of slot 0 in degrees, measured from the positive x axis toward the positive z axis
+     */
+    public double getPhase() {
+        return Math.toDegrees(phase);
+    }
+
+    /**
+     * Gets the estimated standard error of the fitted angle in degrees, which goes down as more strongholds are
+     * confirmed. NaN until at least 2 strongholds are confirmed.
+     */
+    public double getPhaseError() {
+        if (accepted < 2)
+            return Double.NaN;
+        double r = Math.min(Math.sqrt(sumCos * sumCos + sumSin * sumSin) / accepted, 1);
+        //circular standard deviation of n times the angles, scaled back down and divided by sqrt(count)
+        return Math.toDegrees(Math.sqrt(-2 * Math.log(r)) / n / Math.sqrt(accepted));
+    }
+
+    /**
+     * Gets how far a confirmed stronghold is from where the fit puts its slot, as an angle in degrees
+     *
+     * @param slot The slot to get the residual of
+     * @return The residual, positive if the stronghold is at a larger angle than its slot, NaN if not confirmed
+     */
+    public double getResidual(int slot) {
+        if (!isConfirmed(slot))
+            return Double.NaN;
+        return Math.toDegrees(residual(confirmed[slot], slot));
+    }
+
+    /**
+     * Gets how far a confirmed stronghold is from where the fit puts its slot in blocks along the ring
+     *
+     * @param slot The slot to get the residual of
+     * @return The residual in blocks, NaN if not confirmed
+     */
+    public double getResidualBlocks(int slot) {
+        if (!isConfirmed(slot))
+            return Double.NaN;
+        return residual(confirmed[slot], slot) * radius[slot];
+    }
+
+    /**
+     * Writes the predicted coordinates of every slot that has not been confirmed, using the fitted angle and the
+     * average distance of the ring
+     *
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @param slots Output for the slot of each prediction
+     * @param outX Output for the x coordinates
+     * @param outZ Output for the z coordinates
+     * @return The number of predictions written
+     */
+    public int project(boolean nether, int[] slots, double[] outX, double[] outZ) {
+        //slot 0 is at the fitted angle, the kernel rotates it through the tables to every other slot
+        double ux = Math.cos(phase);
+        double uz = Math.sin(phase);
+        projX[0] = ProjectionKernel.round(ux * dist);
+        projZ[0] = ProjectionKernel.round(uz * dist);
+        ProjectionKernel.project(tables, ring, ux, uz, false, projX, projZ, 1);
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            if (isConfirmed(k))
+                continue;
+            slots[count] = k;
+            outX[count] = nether ? projX[k] / 8 : projX[k];
+            outZ[count++] = nether ? projZ[k] / 8 : projZ[k];
+        }
+        return count;
+    }
+
+    /**
+     * Creates a StrongholdSet of the predictions for every slot that has not been confirmed
+     *
+     * @return The remaining predictions, indexed by slot
+     */
+    public StrongholdSet toStrongholdSet() {
+        int[] slots = new int[n];
+        double[] xs = new double[n];
+        double[] zs = new double[n];
+        int count = project(false, slots, xs, zs);
+        StrongholdSet set = new StrongholdSet(ring, tables.getNumStrongholds(ring));
+        for (int i = 0; i < count; i++) {
+            set.add(slots[i], Math.floorDiv((int) xs[i], 16), Math.floorDiv((int) zs[i], 16));
+        }
+        return set;
+    }
+
+    //The slot closest to an angle using the current fit
+    private int slotOf(double angle) {
+        int k = (int) Math.round((angle - phase) / step);
+        return Math.floorMod(k, n);
+    }
+
+    //Angle from the fitted position of a slot to the given angle, between -step/2 and step/2 for its own slot
+    private double residual(double angle, int slot) {
+        return wrap(angle - phase - slot * step, 2 * Math.PI);
+    }
+
+    //Wraps an angle into -period/2 to period/2
+    private static double wrap(double a, double period) {
+        return a - period * Math.round(a / period);
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * Decides which ring a found stronghold is calculated in, for {@link RingCalculator#calculate}. It covers every
+ * way the programs pick a ring: only the ring the stronghold is in, guessing when it is in a gap the way the GUI
+ * does, a ring chosen ahead of time for strongholds in a gap the way the command line version does with ring:N,
+ * and a ring the user picked no matter where the stronghold is.
+ *
+ * @param kind How the ring is picked
+ * @param ring The ring for FALLBACK and FIXED, null for the others
+ */
+public record RingPolicy(Kind kind, Ring ring) {
+    /**
+     * Only use the ring the stronghold is in, failing if it is in a gap
+     */
+    public static final RingPolicy STRICT = new RingPolicy(Kind.STRICT, null);
+    /**
+     * Use the ring the stronghold is in, or the most likely ring if it is in a gap
+     */
+    public static final RingPolicy GUESS = new RingPolicy(Kind.GUESS, null);
+
+    /**
+     * How the ring is picked
+     */
+    public enum Kind {
+        /**
+         * Only the ring the stronghold is in
+         */
+        STRICT,
+        /**
+         * The ring the stronghold is in, or the most likely ring
+         */
+        GUESS,
+        /**
+         * The ring the stronghold is in, or the given ring
+         */
+        FALLBACK,
+        /**
+         * Always the given ring
+         */
+        FIXED
+    }
+
+    /**
+     * Checks that a ring is given exactly when the kind needs one
+     *
+     * @throws IllegalArgumentException If there is no kind, or the ring is missing for FALLBACK or FIXED or given
+     * for the others
+     */
+    public RingPolicy {
+        if (kind == null)
+            throw new IllegalArgumentException("A ring policy needs a kind");
+        boolean needsRing = kind == Kind.FALLBACK || kind == Kind.FIXED;
+        if (needsRing != (ring != null))
+            throw new IllegalArgumentException(needsRing ? "A ring is needed for " + kind
+                                                         : "No ring can be given for " + kind);
+    }
+
+    /**
+     * Creates a policy that uses the ring the stronghold is in, or the given ring if it is in a gap
+     *
+     * @param ring The ring for strongholds in a gap
+     */
+    public static RingPolicy fallback(Ring ring) {
+        return new RingPolicy(Kind.FALLBACK, ring);
+    }
+
+    /**
+     * Creates a policy that always uses the given ring
+     *
+     * @param ring The ring
+     */
+    public static RingPolicy fixed(Ring ring) {
+        return new RingPolicy(Kind.FIXED, ring);
+    }
+}
@@ -0,0 +1,230 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link RingConfig} compiled into the flat tables the calculations read: the bounds and squared distance
+ * thresholds of every ring, the angle between its strongholds and the unit rotations from a found stronghold to
+ * every other one. Tables are immutable, so a calculation reads {@link #current()} once and uses the same tables
+ * from start to end, and never looks at the config they came from.
+ * <p>
+ * The tables in use are held in an AtomicReference. {@link #install} compiles a new config before swapping it in,
+ * so a running service changes rings at once: calculations that already started finish with the old tables and
+ * every one after the swap uses the new tables, without any lock or pause. The first tables are the vanilla rings,
+ * or the config file named by the stronghold.rings system property.
+ * <p>
+ * A config can have at most as many rings as the {@link Ring} enum and at most MAX_PREDICTIONS + 1 strongholds in a
+ * ring, the sizes the rest of the program is laid out for. Rings past the last ring of a config have no
+ * strongholds, and {@link Ring#fromNumber} does not give them.
+ */
+public final class RingTables {
+    /**
+     * Most rings a config can have
+     */
+    public static final int MAX_RINGS = Ring.values().length;
+    /**
+     * Distance in chunks either side of the center of a ring that the bounds of the ring are, wider than the 1.25
+     * chunks the generation spreads strongholds by to leave room for strongholds that snapped to a different biome
+     */
+    private static final double HALF_WIDTH = 1.5;
+    /**
+     * The rings in order, kept since values() copies the array every call
+     */
+    private static final Ring[] RINGS = Ring.values();
+    /**
+     * The tables in use
+     */
+    private static final AtomicReference<RingTables> CURRENT = new AtomicReference<>(initial());
+
+    /**
+     * The config the tables were compiled from
+     */
+    private final RingConfig config;
+    /**
+     * Number of rings with strongholds
+     */
+    final int rings;
+    /**
+     * Number of strongholds in each ring, indexed by ring ordinal, 0 for rings past the last ring
+     */
+    final int[] count;
+    /**
+     * Least and greatest distance in blocks from the origin of each ring, and the distance of its center, indexed by
+     * ring ordinal
+     */
+    final int[] min, max, average;
+    /**
+     * Squared distance from the origin at which each ring starts and ends, indexed by ring ordinal. The half block
+     * matches rounding the distance to the nearest block and then requiring it to be strictly inside the ring.
+     */
+    final double[] inner2, outer2;
+    /**
+     * Distance and squared distance halfway across the gap after each ring, indexed by ring ordinal
+     */
+    final double[] middle, middle2;
+    /**
+     * Angle in radians between neighbouring strongholds of each ring, indexed by ring ordinal
+     */
+    final double[] step;
+    /**
+     * Index in cos and sin of the first rotation of each ring, indexed by ring ordinal, with one more entry for
+     * the end of the last ring
+     */
+    final int[] offset;
+    /**
+     * Cosine and sine of the rotation from a found stronghold to the stronghold k slots after it, for k from 1 to
+     * the number of strongholds - 1, every ring one after another
+     */
+    final double[] cos, sin;
+
+    //Compiles a config, see compile
+    private RingTables(RingConfig config) {
+        this.config = config;
+        count = new int[MAX_RINGS];
+        int n = 0, placed = 0, spread = config.spread();
+        //the same ring sizes the game generates, the last ring only has the strongholds that are left
+        while (placed < config.count()) {
+            if (n == MAX_RINGS)
+                throw new IllegalArgumentException("The rings of " + config + " need more than " + MAX_RINGS
+                                                   + " rings");
+            count[n] = Math.min(spread, config.count() - placed);
+            if (count[n] > RingCalculator.MAX_PREDICTIONS + 1)
+                throw new IllegalArgumentException("Ring " + (n + 1) + " of " + config + " has more than "
+                                                   + (RingCalculator.MAX_PREDICTIONS + 1) + " strongholds");
+            placed += count[n++];
+            spread += 2 * spread / (n + 1);
+        }
+        rings = n;
+        min = new int[MAX_RINGS];
+        max = new int[MAX_RINGS];
+        average = new int[MAX_RINGS];
+        inner2 = new double[MAX_RINGS];
+        outer2 = new double[MAX_RINGS];
+        middle = new double[MAX_RINGS];
+        middle2 = new double[MAX_RINGS];
+        step = new double[MAX_RINGS];
+        offset = new int[MAX_RINGS + 1];
+        int d = config.distance();
+        for (int i = 0; i < rings; i++) {
+            average[i] = (4 + 6 * i) * d * 16;
+            min[i] = (int) (average[i] - HALF_WIDTH * d * 16);
+            max[i] = (int) (average[i] + HALF_WIDTH * d * 16);
+            inner2[i] = (min[i] + 0.5) * (min[i] + 0.5);
+            outer2[i] = (max[i] - 0.5) * (max[i] - 0.5);
+            step[i] = 2 * Math.PI / count[i];
+            offset[i + 1] = offset[i] + count[i] - 1;
+        }
+        for (int i = 0; i + 1 < rings; i++) {
+            middle[i] = (max[i] + min[i + 1]) / 2.0;
+            middle2[i] = middle[i] * middle[i];
+        }
+        Arrays.fill(offset, rings + 1, offset.length, offset[rings]);
+        cos = new double[offset[rings]];
+        sin = new double[offset[rings]];
+        for (int i = 0; i < rings; i++) {
+            for (int k = 1; k < count[i]; k++) {
+                double a = 2 * Math.PI * k / count[i];
+                cos[offset[i] + k - 1] = Math.cos(a);
+                sin[offset[i] + k - 1] = Math.sin(a);
+            }
+        }
+    }
+
+    /**
+     * Compiles a config into tables without using them
+     *
+     * @param config The config to compile
+     * @return The tables
+     * @throws IllegalArgumentException If the config has more rings or more strongholds in a ring than the program
+     * can hold
+     */
+    public static RingTables compile(RingConfig config) {
+        return new RingTables(config);
+    }
+
+    /**
+     * Gets the tables in use
+     */
+    public static RingTables current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Compiles a config and uses it from now on. Calculations already running finish with the tables they started
+     * with.
+     *
+     * @param config The config to use
+     * @return The tables now in use
+     * @throws IllegalArgumentException If the config has more rings or more strongholds in a ring than the program
+     * can hold, the tables in use do not change
+     */
+    public static RingTables install(RingConfig config) {
+        RingTables t = compile(config);
+        CURRENT.set(t);
+        return t;
+    }
+
+    /**
+     * Gets the config the tables were compiled from
+     */
+    public RingConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Gets the number of rings with strongholds
+     */
+    public int getRings() {
+        return rings;
+    }
+
+    /**
+     * Gets the rings with strongholds in order
+     */
+    public Ring[] rings() {
+        return Arrays.copyOf(RINGS, rings);
+    }
+
+    /**
+     * Gets the number of strongholds in a ring, 0 if the ring is past the last ring
+     */
+    public int getNumStrongholds(Ring ring) {
+        return count[ring.ordinal()];
+    }
+
+    /**
+     * Gets the least distance in blocks from the origin a stronghold of a ring can be
+     */
+    public int getMin(Ring ring) {
+        return min[ring.ordinal()];
+    }
+
+    /**
+     * Gets the greatest distance in blocks from the origin a stronghold of a ring can be
+     */
+    public int getMax(Ring ring) {
+        return max[ring.ordinal()];
+    }
+
+    /**
+     * Gets the distance in blocks from the origin of the center of a ring, the distance predictions are made at
+     */
+    public int getAverageDistance(Ring ring) {
+        return average[ring.ordinal()];
+    }
+
+    //The tables of the config file named by the stronghold.rings system property, or the vanilla tables
+    private static RingTables initial() {
+        String file = System.getProperty("stronghold.rings");
+        if (file == null)
+            return compile(RingConfig.VANILLA);
+        try {
+            return compile(RingConfig.load(Path.of(file)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the ring config " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Plans a short route from a start point through every remaining predicted stronghold, for runs that need to visit
+ * all of them such as All Portals. Coordinates are usually nether coordinates, since that is where the travelling
+ * is done, but any consistent units work.
+ * <p>
+ * A route is planned from several starts in parallel. Each begins with a nearest neighbour route (randomised for
+ * every start but the first) and is improved with 2-opt and Or-opt moves until neither finds an improvement or
+ * the time budget runs out, and the shortest route is kept. When a stronghold is removed it is cut out of the
+ * kept route and only that route is improved again, instead of planning from scratch.
+ * <p>
+ * The route is open: it starts at the start point and ends at the last stronghold without coming back.
+ */
+public class RoutePlanner {
+    /**
+     * Longest segment moved by an Or-opt move
+     */
+    private static final int OR_OPT_MAX = 3;
+    /**
+     * Smallest improvement that counts, so rounding errors cannot make the search loop forever
+     */
+    private static final double EPSILON = 1e-7;
+    /**
+     * Distance between every pair of points, point 0 is the start and point i + 1 is stronghold i
+     */
+    private final double[][] dist;
+    /**
+     * Whether each stronghold has been removed
+     */
+    private final boolean[] removed;
+    /**
+     * Seed for the randomised starts, so a plan is repeatable
+     */
+    private final long seed;
+    /**
+     * Best route found, as stronghold ids in order of visiting
+     */
+    private int[] route = new int[0];
+    /**
+     * Length of the best route
+     */
+    private double length;
+
+    /**
+     * Creates a planner for the given strongholds
+     *
+     * @param startX The x coordinate of the start point
+     * @param startZ The z coordinate of the start point
+     * @param xs The x coordinates of the strongholds, the index of each is its id
+     * @param zs The z coordinates of the strongholds
+     */
+    public RoutePlanner(double startX, double startZ, double[] xs, double[] zs) {
+        this(startX, startZ, xs, zs, 0x5eedL);
+    }
+
+    /**
+     * Creates a planner for the given strongholds with a seed for the randomised starts
+     *
+     * @param startX The x coordinate of the start point
+     * @param startZ The z coordinate of the start point
+     * @param xs The x coordinates of the strongholds, the index of each is its id
+     * @param zs The z coordinates of the strongholds
+     * @param seed Seed for the randomised starts
+     * @throws IllegalArgumentException If the coordinate arrays are not the same length
+     */
+    public RoutePlanner(double startX, double startZ, double[] xs, double[] zs, long seed) {
+        if (xs.length != zs.length)
+            throw new IllegalArgumentException("Coordinate arrays must be the same length");
+        int n = xs.length + 1;
+        double[] px = new double[n];
+        double[] pz = new double[n];
+        px[0] = startX;
+        pz[0] = startZ;
+        System.arraycopy(xs, 0, px, 1, xs.length);
+        System.arraycopy(zs, 0, pz, 1, zs.length);
+        dist = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                dist[i][j] = Math.hypot(px[i] - px[j], pz[i] - pz[j]);
+            }
+        }
+        removed = new boolean[xs.length];
+        this.seed = seed;
+    }
+
+    /**
+     * Plans a route through every stronghold that has not been removed
+     *
+     * @param restarts Number of starts to plan from in parallel, at least 1
+     * @param budgetNanos Most time to spend in nanoseconds, the best route found so far is kept when it runs out
+     * @return The stronghold ids in order of visiting
+     */
+    public int[] plan(int restarts, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int[] best = IntStream.range(0, Math.max(restarts, 1)).parallel()
+                              .mapToObj(r -> improve(seedRoute(r), deadline))
+                              .min((a, b) -> Double.compare(length(a), length(b)))
+                              .orElseThrow();
+        setRoute(best);
+        return getRoute();
+    }
+
+    /**
+     * Removes a stronghold and improves the current route without it
+     *
+     * @param id The id of the stronghold to remove
+     * @param budgetNanos Most time to spend in nanoseconds
+     * @return The stronghold ids in order of visiting
+     * @throws IllegalArgumentException If the id is not a stronghold of this planner
+     */
+    public int[] remove(int id, long budgetNanos) {
+        if (id < 0 || id >= removed.length)
+            throw new IllegalArgumentException("Invalid stronghold id " + id);
+        long deadline = System.nanoTime() + budgetNanos;
+        removed[id] = true;
+        int[] path = new int[route.length + 1];
+        int n = 1; //path[0] is the start point
+        for (int s : route) {
+            if (s != id)
+                path[n++] = s + 1;
+        }
+        setRoute(improve(Arrays.copyOf(path, n), deadline));
+        return getRoute();
+    }
+
+    /**
+     * Gets the current route as stronghold ids in order of visiting
+     */
+    public int[] getRoute() {
+        return route.clone();
+    }
+
+    /**
+     * Gets the length of the current route
+     */
+    public double getLength() {
+        return length;
+    }
+
+    //Keeps a path of points as the route
+    private void setRoute(int[] path) {
+        route = new int[path.length - 1];
+        for (int i = 1; i < path.length; i++) {
+            route[i - 1] = path[i] - 1;
+        }
+        length = length(path);
+    }
+
+    //Nearest neighbour path of points from the start, picking randomly among the 3 nearest for restarts past 0
+    private int[] seedRoute(int restart) {
+        SplittableRandom rand = new SplittableRandom(seed + restart);
+        int remaining = 0;
+        for (boolean r : removed) {
+            if (!r)
+                remaining++;
+        }
+        int[] path = new int[remaining + 1];
+        boolean[] used = new boolean[dist.length];
+        used[0] = true;
+        for (int i = 0; i < removed.length; i++) {
+            used[i + 1] = removed[i];
+        }
+        int[] near = new int[3];
+        for (int i = 1; i < path.length; i++) {
+            int from = path[i - 1];
+            int found = 0;
+            for (int p = 1; p < dist.length; p++) {
+                if (used[p])
+                    continue;
+                //keep the 3 nearest sorted
+                int j = Math.min(found, near.length - 1);
+                if (found < near.length) found++;
+                else if (dist[from][p] >= dist[from][near[j]]) continue;
+                while (j > 0 && dist[from][near[j - 1]] > dist[from][p]) {
+                    near[j] = near[j - 1];
+                    j--;
+                }
+                near[j] = p;
+            }
+            int pick = restart == 0 ? near[0] : near[rand.nextInt(found)];
+            used[pick] = true;
+            path[i] = pick;
+        }
+        return path;
+    }
+
+    //Improves a path with 2-opt and Or-opt moves until neither improves it or the deadline passes
+    private int[] improve(int[] path, long deadline) {
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = twoOpt(path) | orOpt(path);
+        }
+        return path;
+    }
+
+    //Applies every improving reversal of a segment, returns whether any were found
+    private boolean twoOpt(int[] p) {
+        int n = p.length;
+        boolean any = false;
+        for (int i = 1; i < n - 1; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double before = dist[p[i - 1]][p[i]] + (j + 1 < n ? dist[p[j]][p[j + 1]] : 0);
+                double after = dist[p[i - 1]][p[j]] + (j + 1 < n ? dist[p[i]][p[j + 1]] : 0);
+                if (after < before - EPSILON) {
+                    reverse(p, i, j);
+                    any = true;
+                }
+            }
+        }
+        return any;
+    }
+
+    //Applies every improving move of a short segment to somewhere else in the path, returns whether any were found
+    private boolean orOpt(int[] p) {
+        int n = p.length;
+        boolean any = false;
+        for (int len = 1; len <= OR_OPT_MAX; len++) {
+            for (int i = 1; i + len <= n; i++) {
+                int j = i + len - 1; //segment is p[i..j]
+                int prev = p[i - 1];
+                int next = j + 1 < n ? p[j + 1] : -1;
+                double removeGain = dist[prev][p[i]] + (next >= 0 ? dist[p[j]][next] - dist[prev][next] : 0);
+                //try putting the segment between p[k] and p[k + 1] for every k outside it
+                for (int k = 0; k < n; k++) {
+                    if (k >= i - 1 && k <= j)
+                        continue;
+                    int a = p[k];
+                    int b = k + 1 < n ? p[k + 1] : -1;
+                    double add = dist[a][p[i]] + (b >= 0 ? dist[p[j]][b] - dist[a][b] : 0);
+                    if (add < removeGain - EPSILON) {
+                        move(p, i, j, k);
+                        any = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return any;
+    }
+
+    //Moves p[i..j] to just after p[k], where k is outside of i - 1 to j
+    private static void move(int[] p, int i, int j, int k) {
+        int len = j - i + 1;
+        int[] seg = Arrays.copyOfRange(p, i, j + 1);
+        if (k > j) {
+            System.arraycopy(p, j + 1, p, i, k - j);
+            System.arraycopy(seg, 0, p, k - len + 1, len);
+        } else {
+            System.arraycopy(p, k + 1, p, k + 1 + len, i - k - 1);
+            System.arraycopy(seg, 0, p, k + 1, len);
+        }
+    }
+
+    //Reverses p[i..j]
+    private static void reverse(int[] p, int i, int j) {
+        while (i < j) {
+            int t = p[i];
+            p[i++] = p[j];
+            p[j--] = t;
+        }
+    }
+
+    //Length of a path of points
+    private double length(int[] p) {
+        double l = 0;
+        for (int i = 1; i < p.length; i++) {
+            l += dist[p[i - 1]][p[i]];
+        }
+        return l;
+    }
+}
@@ -0,0 +1,293 @@
+package model;
+
+import java.util.HashSet;
+
+/**
+ * Compact set of the predicted strongholds of a single ring. Each prediction is stored as one long packing the
+ * ring number, the slot of the prediction and the chunk coordinates the prediction is in, so a full RING7
+ * prediction takes 36 longs instead of 35 Coords objects and a HashSet.
+ * <p>
+ * Slots are numbered the same way {@link ProjectionKernel} orders its predictions: slot k is the stronghold k
+ * places after the found stronghold in order of increasing angle, and slot 0 is the found stronghold itself.
+ * Predictions are indexed by slot, so removing one is O(1), and a bit mask is kept for each quadrant so the
+ * predictions can be grouped by quadrant without looking at every entry.
+ */
+public class StrongholdSet {
+    /**
+     * Most slots a set can hold, one for each bit of the masks
+     */
+    public static final int MAX_SLOTS = 64;
+    /**
+     * Bits used for each chunk coordinate of a packed entry
+     */
+    private static final int CHUNK_BITS = 27;
+    /**
+     * Mask of the bits used for each chunk coordinate of a packed entry
+     */
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    /**
+     * Bits used for the slot of a packed entry
+     */
+    private static final int SLOT_BITS = 6;
+    /**
+     * The ring the predictions are in
+     */
+    private final Ring ring;
+    /**
+     * Packed entries indexed by slot, only valid where the bit for the slot is set in present
+     */
+    private final long[] entries;
+    /**
+     * Bit mask of the slots that currently hold a prediction
+     */
+    private long present;
+    /**
+     * Bit masks of the slots that hold a prediction in each quadrant, indexed by Quadrant ordinal
+     */
+    private final long[] quadrants = new long[Coords.Quadrant.values().length];
+
+    /**
+     * Creates an empty set for the given ring
+     *
+     * @param ring The ring the predictions are in
+     * @throws IllegalArgumentException If the ring has more strongholds than a set can hold
+     */
+    public StrongholdSet(Ring ring) {
+        this(ring, ring.getNumStrongholds());
+    }
+
+    //Creates an empty set with room for the given number of slots, for callers that read it from a tables snapshot
+    StrongholdSet(Ring ring, int slots) {
+        if (slots > MAX_SLOTS)
+            throw new IllegalArgumentException("Ring has more than " + MAX_SLOTS + " strongholds");
+        this.ring = ring;
+        entries = new long[slots];
+    }
+
+    /**
+     * Creates the set of predictions for a found stronghold
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, already offset to the chunk center
+     * @param z The z coordinate of the found stronghold, already offset to the chunk center
+     * @return A set holding a prediction for every other slot of the ring
+     */
+    public static StrongholdSet predict(Ring ring, double x, double z) {
+        //one read of the tables, so the set and the projection agree on the size of the ring
+        RingTables t = RingTables.current();
+        StrongholdSet set = new StrongholdSet(ring, t.getNumStrongholds(ring));
+        int[] cx = new int[set.entries.length];
+        int[] cz = new int[set.entries.length];
+        int n = ProjectionKernel.projectChunks(t, ring, x, z, cx, cz, 0);
+        for (int i = 0; i < n; i++) {
+            set.add(i + 1, cx[i], cz[i]);
+        }
+        return set;
+    }
+
+    /**
+     * Gets the ring the predictions are in
+     */
+    public Ring getRing() {
+        return ring;
+    }
+
+    /**
+     * Gets the number of predictions in the set
+     */
+    public int size() {
+        return Long.bitCount(present);
+    }
+
+    /**
+     * Whether the set holds no predictions
+     */
+    public boolean isEmpty() {
+        return present == 0;
+    }
+
+    /**
+     * Adds a prediction to the set, replacing any prediction already in the slot
+     *
+     * @param slot The slot of the prediction
+     * @param chunkX The x coordinate of the chunk the prediction is in
+     * @param chunkZ The z coordinate of the chunk the prediction is in
+     * @throws IllegalArgumentException If the slot is not a slot of the ring
+     */
+    public void add(int slot, int chunkX, int chunkZ) {
+        remove(slot);
+        entries[slot] = pack(ring.getRingNum(), slot, chunkX, chunkZ);
+        present |= 1L << slot;
+        quadrants[quadrant(chunkX, chunkZ).ordinal()] |= 1L << slot;
+    }
+
+    /**
+     * Removes the prediction in a slot
+     *
+     * @param slot The slot to remove
+     * @return True if the slot held a prediction
+     * @throws IllegalArgumentException If the slot is not a slot of the ring
+     */
+    public boolean remove(int slot) {
+        checkSlot(slot);
+        long bit = 1L << slot;
+        if ((present & bit) == 0)
+            return false;
+        present &= ~bit;
+        for (int i = 0; i < quadrants.length; i++) {
+            quadrants[i] &= ~bit;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a slot holds a prediction
+     *
+     * @param slot The slot to check
+     */
+    public boolean contains(int slot) {
+        return slot >= 0 && slot < entries.length && (present & (1L << slot)) != 0;
+    }
+
+    /**
+     * Gets the packed entry of a slot, which can be read with the static unpacking methods of this class
+     *
+     * @param slot The slot to get
+     * @return The packed entry
+     * @throws IllegalArgumentException If the slot does not hold a prediction
+     */
+    public long get(int slot) {
+        if (!contains(slot))
+            throw new IllegalArgumentException("Slot " + slot + " does not hold a prediction");
+        return entries[slot];
+    }
+
+    /**
+     * Finds the slot of the prediction in a chunk
+     *
+     * @param chunkX The x coordinate of the chunk
+     * @param chunkZ The z coordinate of the chunk
+     * @return The slot of the prediction in the chunk, -1 if there is none
+     */
+    public int findSlot(int chunkX, int chunkZ) {
+        for (long m = present; m != 0; m &= m - 1) {
+            int slot = Long.numberOfTrailingZeros(m);
+            if (chunkX(entries[slot]) == chunkX && chunkZ(entries[slot]) == chunkZ)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a bit mask of the slots holding a prediction. Bit k is set if slot k holds a prediction.
+     */
+    public long slotMask() {
+        return present;
+    }
+
+    /**
+     * Gets a bit mask of the slots holding a prediction in a quadrant. Bit k is set if slot k holds a prediction
+     * in the quadrant.
+     *
+     * @param q The quadrant to get the slots of
+     */
+    public long slotMask(Coords.Quadrant q) {
+        return quadrants[q.ordinal()];
+    }
+
+    /**
+     * Creates Coords for every prediction in the set at the center of its chunk
+     *
+     * @param nether Whether to have the coordinates as nether coordinates or not
+     * @return A HashSet of the coordinates
+     */
+    public HashSet<Coords> toCoords(boolean nether) {
+        HashSet<Coords> coords = new HashSet<>();
+        for (long m = present; m != 0; m &= m - 1) {
+            long e = entries[Long.numberOfTrailingZeros(m)];
+            coords.add(new Coords(blockX(e, nether), blockZ(e, nether)));
+        }
+        return coords;
+    }
+
+    /**
+     * Packs a prediction into a single long
+     *
+     * @param ring The ring number, 0 to 15
+     * @param slot The slot, 0 to 63
+     * @param chunkX The x coordinate of the chunk
+     * @param chunkZ The z coordinate of the chunk
+     * @return The packed entry
+     */
+    public static long pack(int ring, int slot, int chunkX, int chunkZ) {
+        return (long) ring << (SLOT_BITS + 2 * CHUNK_BITS)
+               | (long) slot << (2 * CHUNK_BITS)
+               | (chunkX & CHUNK_MASK) << CHUNK_BITS
+               | (chunkZ & CHUNK_MASK);
+    }
+
+    /**
+     * Gets the ring number of a packed entry
+     */
+    public static int ring(long entry) {
+        return (int) (entry >>> (SLOT_BITS + 2 * CHUNK_BITS));
+    }
+
+    /**
+     * Gets the slot of a packed entry
+     */
+    public static int slot(long entry) {
+        return (int) (entry >>> (2 * CHUNK_BITS)) & ((1 << SLOT_BITS) - 1);
+    }
+
+    /**
+     * Gets the chunk x coordinate of a packed entry
+     */
+    public static int chunkX(long entry) {
+        //shift up then back down to restore the sign
+        return (int) (entry << (64 - 2 * CHUNK_BITS) >> (64 - CHUNK_BITS));
+    }
+
+    /**
+     * Gets the chunk z coordinate of a packed entry
+     */
+    public static int chunkZ(long entry) {
+        return (int) (entry << (64 - CHUNK_BITS) >> (64 - CHUNK_BITS));
+    }
+
+    /**
+     * Gets the x block coordinate of the center of the chunk of a packed entry
+     *
+     * @param entry The packed entry
+     * @param nether Whether to give the coordinate as a nether coordinate or not
+     */
+    public static double blockX(long entry, boolean nether) {
+        double x = chunkX(entry) * 16 + 8;
+        return nether ? x / 8 : x;
+    }
+
+    /**
+     * Gets the z block coordinate of the center of the chunk of a packed entry
+     *
+     * @param entry The packed entry
+     * @param nether Whether to give the coordinate as a nether coordinate or not
+     */
+    public static double blockZ(long entry, boolean nether) {
+        double z = chunkZ(entry) * 16 + 8;
+        return nether ? z / 8 : z;
+    }
+
+    //Same rule as Coords, a chunk coordinate is only negative if the block coordinates in it are
+    private static Coords.Quadrant quadrant(int chunkX, int chunkZ) {
+        if (chunkX < 0 && chunkZ < 0) return Coords.Quadrant.NEGNEG;
+        else if (chunkX >= 0 && chunkZ >= 0) return Coords.Quadrant.POSPOS;
+        else if (chunkX >= 0) return Coords.Quadrant.POSNEG;
+        else return Coords.Quadrant.NEGPOS;
+    }
+
+    //Throws IAE if the slot is not a slot of the ring
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= entries.length)
+            throw new IllegalArgumentException("Invalid slot " + slot + " for ring " + ring.getRingNum());
+    }
+}
@@ -0,0 +1,294 @@
+package model;
+
+/**
+ * Matches a single Eye of Ender throw to one of the remaining predictions of a ring. Once predictions exist a
+ * player usually throws one eye near a predicted spot, and the line the eye flies along is enough to tell which
+ * prediction it points to and how far off that prediction is, without throwing a second eye to triangulate.
+ * <p>
+ * The remaining predictions are kept sorted by their angle around the origin. The stronghold an eye points to is
+ * somewhere on the part of its line that first passes through the ring, so a throw is matched by binary searching
+ * the angles that part sweeps past and picking the prediction the line passes closest to. Only the predictions in
+ * that range and the one either side of it are compared, usually two or three, so a match is O(log n). The error
+ * of the match is the angle around the origin between the prediction and the point of the line closest to it.
+ * <p>
+ * A throw within a quarter of the angle between strongholds confirms the slot: the point of the line closest to
+ * the prediction is added to a {@link RingPhaseFitter}, which moves the remaining predictions to the angle that
+ * best fits every stronghold confirmed so far.
+ * <p>
+ * Slots are numbered the same way as {@link StrongholdSet}, slot 0 is the found stronghold. Directions are
+ * Minecraft yaw in degrees, the same as {@link EyeTriangulator}. A matcher is not thread safe, keep one per player.
+ */
+public class ThrowMatcher {
+    /**
+     * The ring tables the matcher was sized from
+     */
+    private final RingTables tables;
+    /**
+     * Fits the angle of the ring from the found stronghold and every confirmed throw
+     */
+    private final RingPhaseFitter fitter;
+    /**
+     * Distance from the origin of the inner and outer edge of the ring
+     */
+    private final double min, max;
+    /**
+     * Bit mask of the slots that are still predicted
+     */
+    private long remaining;
+    /**
+     * Angle around the origin of each remaining prediction in radians from -pi to pi, in increasing order
+     */
+    private final double[] angles;
+    /**
+     * Slot of the prediction at each index of angles
+     */
+    private final int[] slots;
+    /**
+     * Coordinates of the prediction at each index of angles
+     */
+    private final double[] xs, zs;
+    /**
+     * Number of remaining predictions in the index
+     */
+    private int count;
+
+    /**
+     * A throw matched to a prediction
+     *
+     * @param slot The slot of the prediction
+     * @param error Angle in degrees around the origin between the prediction and the point of the throw's line
+     * closest to it
+     * @param x The x coordinate of the prediction
+     * @param z The z coordinate of the prediction
+     * @param confirmed Whether the throw was close enough to confirm the slot and correct the angle of the ring
+     */
+    public record Match(int slot, double error, double x, double z, boolean confirmed) {
+    }
+
+    /**
+     * Creates a matcher
+     *
+     * @param ring The ring the found stronghold is in
+     * @param x The x coordinate of the found stronghold, measured the same way as the ones given to RingCalculator
+     * @param z The z coordinate of the found stronghold, measured the same way as the ones given to RingCalculator
+     * @param remaining Bit mask of the slots still predicted, such as {@link StrongholdSet#slotMask()}
+     */
+    public ThrowMatcher(Ring ring, double x, double z, long remaining) {
+        tables = RingTables.current();
+        int n = tables.getNumStrongholds(ring);
+        fitter = new RingPhaseFitter(tables, ring, 90.0 / n);
+        fitter.confirm(x, z);
+        min = tables.getMin(ring);
+        max = tables.getMax(ring);
+        angles = new double[n];
+        slots = new int[n];
+        xs = new double[n];
+        zs = new double[n];
+        //slot 0 is the found stronghold and is never predicted
+        this.remaining = remaining & ((1L << n) - 1) & ~1L;
+        build();
+    }
+
+    /**
+     * Gets the ring the predictions are in
+     */
+    public Ring getRing() {
+        return fitter.getRing();
+    }
+
+    /**
+     * Gets the bit mask of the slots that are still predicted
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Keeps only the given slots, for when predictions are removed some other way such as the player visiting them
+     *
+     * @param mask Bit mask of the slots to keep
+     */
+    public void retain(long mask) {
+        if ((remaining & mask) != remaining) {
+            remaining &= mask;
+            build();
+        }
+    }
+
+    /**
+     * Gets the fitter holding the angle of the ring and the confirmed slots
+     */
+    public RingPhaseFitter getFitter() {
+        return fitter;
+    }
+
+    /**
+     * Finds the prediction a throw points to without confirming it
+     *
+     * @param x The x coordinate the eye was thrown from
+     * @param z The z coordinate the eye was thrown from
+     * @param yaw The direction the eye flew in as Minecraft yaw in degrees
+     * @return The match, null if there are no predictions left
+     */
+    public Match match(double x, double z, double yaw) {
+        return match(x, z, yaw, false);
+    }
+
+    /**
+     * Finds the prediction a throw points to and confirms its slot if the throw is close enough. A confirmed slot
+     * is no longer predicted and the remaining predictions are moved to the corrected angle of the ring.
+     *
+     * @param x The x coordinate the eye was thrown from
+     * @param z The z coordinate the eye was thrown from
+     * @param yaw The direction the eye flew in as Minecraft yaw in degrees
+     * @return The match, null if there are no predictions left
+     */
+    public Match confirm(double x, double z, double yaw) {
+        return match(x, z, yaw, true);
+    }
+
+    /**
+     * Creates a StrongholdSet of the remaining predictions at the corrected angle of the ring
+     *
+     * @return The remaining predictions, indexed by slot
+     */
+    public StrongholdSet toStrongholdSet() {
+        StrongholdSet set = new StrongholdSet(getRing(), tables.getNumStrongholds(getRing()));
+        for (int i = 0; i < count; i++) {
+            set.add(slots[i], Math.floorDiv((int) xs[i], 16), Math.floorDiv((int) zs[i], 16));
+        }
+        return set;
+    }
+
+    //Matches a throw, confirming the slot when asked to and the throw is close enough
+    private Match match(double x, double z, double yaw, boolean confirm) {
+        if (count == 0)
+            return null;
+        double rad = Math.toRadians(yaw);
+        double dx = -Math.sin(rad);
+        double dz = Math.cos(rad);
+        //the part of the line ahead of the player where it first passes through the ring, the stronghold the eye
+        //points to is somewhere on it
+        double b = x * dx + z * dz;
+        double p2 = x * x + z * z;
+        double outer = b * b - (p2 - max * max);
+        double start = 0, end = -1;
+        if (outer >= 0) {
+            double root = Math.sqrt(outer);
+            start = Math.max(-b - root, 0);
+            end = -b + root;
+            double inner = b * b - (p2 - min * min);
+            if (inner >= 0) { //the line also passes through the hole in the middle of the ring
+                double in = -b - Math.sqrt(inner), out = -b + Math.sqrt(inner);
+                if (in > start)
+                    end = in;
+                else
+                    start = Math.max(start, out);
+            }
+        }
+        boolean crossed = end >= start;
+        if (!crossed) //never in the ring, use the point of the line closest to the predictions
+            start = end = Math.max(-b, 0);
+        double lo = Math.atan2(z + start * dz, x + start * dx);
+        double hi = Math.atan2(z + end * dz, x + end * dx);
+        if (x * dz - z * dx < 0) { //the line turns clockwise around the origin
+            double tmp = lo;
+            lo = hi;
+            hi = tmp;
+        }
+        double span = positive(hi - lo);
+        //compare the predictions the part of the line sweeps past and the closest one either side of it, picking
+        //the one the line passes closest to
+        int first = search(lo);
+        int best = -1;
+        double bestMiss = Double.MAX_VALUE;
+        for (int k = -1; k < count; k++) {
+            int j = Math.floorMod(first + k, count);
+            double vx = xs[j] - x, vz = zs[j] - z;
+            double along = vx * dx + vz * dz;
+            double miss = along < 0 ? Math.sqrt(vx * vx + vz * vz) : Math.abs(dx * vz - dz * vx);
+            if (miss < bestMiss) {
+                best = j;
+                bestMiss = miss;
+            }
+            if (k >= 0 && positive(angles[j] - lo) > span)
+                break;
+        }
+        //where the stronghold is taken to be, the point of the line closest to the prediction
+        double along = Math.max((xs[best] - x) * dx + (zs[best] - z) * dz, 0);
+        double cx = x + along * dx, cz = z + along * dz;
+        double angle = Math.atan2(cz, cx);
+        Match m = new Match(slots[best], Math.toDegrees(Math.abs(wrap(angle - angles[best]))), xs[best], zs[best],
+                            false);
+        //a throw that does not reach the ring cannot say where along it the stronghold is
+        if (!confirm || !crossed)
+            return m;
+        if (fitter.confirmAngle(Math.toDegrees(angle), Math.sqrt(cx * cx + cz * cz)) != m.slot())
+            return m;
+        remaining &= ~(1L << m.slot());
+        build();
+        return new Match(m.slot(), m.error(), m.x(), m.z(), true);
+    }
+
+    //Index of the first prediction at or after an angle, count if there is none
+    private int search(double angle) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (angles[mid] < angle)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    //Wraps an angle in radians into -pi to pi
+    private static double wrap(double a) {
+        return a - 2 * Math.PI * Math.round(a / (2 * Math.PI));
+    }
+
+    //Wraps an angle in radians into 0 to 2 pi
+    private static double positive(double a) {
+        return a - 2 * Math.PI * Math.floor(a / (2 * Math.PI));
+    }
+
+    //Rebuilds the index from the fitted angle of the ring, the slots follow each other around the ring so only
+    //the one that wraps past pi has to be moved to the front
+    private void build() {
+        int n = angles.length;
+        int[] all = new int[n];
+        double[] allX = new double[n];
+        double[] allZ = new double[n];
+        int projected = fitter.project(false, all, allX, allZ);
+        count = 0;
+        int first = 0;
+        for (int i = 0; i < projected; i++) {
+            if ((remaining & 1L << all[i]) == 0)
+                continue;
+            slots[count] = all[i];
+            xs[count] = allX[i];
+            zs[count] = allZ[i];
+            angles[count] = Math.atan2(allZ[i], allX[i]);
+            if (count > 0 && angles[count] < angles[count - 1])
+                first = count;
+            count++;
+        }
+        rotate(first);
+    }
+
+    //Rotates the index so the entry at first becomes the entry at 0
+    private void rotate(int first) {
+        if (first == 0)
+            return;
+        double[] a = angles.clone(), x = xs.clone(), z = zs.clone();
+        int[] s = slots.clone();
+        for (int i = 0; i < count; i++) {
+            int from = (first + i) % count;
+            angles[i] = a[from];
+            slots[i] = s[from];
+            xs[i] = x[from];
+            zs[i] = z[from];
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for the PredictionServer. Sends /predict requests for random found strongholds from a number of
+ * concurrent clients for a fixed time and reports the throughput and latency percentiles. Without a URL it starts
+ * a server in the same JVM on a free port, so it can be run on a single machine with nothing else set up:
+ * <pre>
+ * java -cp out server.LoadGenerator --clients=64 --seconds=20
+ * </pre>
+ */
+public class LoadGenerator {
+    /**
+     * Most latencies kept per client, later requests are still counted but not in the percentiles
+     */
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    /**
+     * Result of a single client
+     *
+     * @param count Number of requests sent
+     * @param errors Number of requests that failed or did not give status 200
+     * @param latencies Latency of each request in nanoseconds, only the first samples entries are valid
+     * @param samples Number of valid latencies
+     */
+    private record ClientResult(long count, long errors, long[] latencies, int samples) {
+    }
+
+    /**
+     * Runs the load generator
+     *
+     * @param args --url=, --clients=, --seconds= and --warmup= options
+     */
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int clients = 32;
+        int seconds = 10;
+        int warmup = 3;
+        for (String a : args) {
+            if (a.startsWith("--url=")) url = a.substring(6);
+            else if (a.startsWith("--clients=")) clients = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--seconds=")) seconds = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--warmup=")) warmup = Integer.parseInt(a.substring(9));
+            else throw new IllegalArgumentException("Unknown argument " + a);
+        }
+        PredictionServer server = null;
+        if (url == null) {
+            PredictionServer.setNoDelay();
+            server = new PredictionServer(0);
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+        }
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        System.out.println("Warming up for " + warmup + "s against " + url);
+        run(client, url, clients, warmup);
+        System.out.println("Measuring for " + seconds + "s with " + clients + " clients");
+        long start = System.nanoTime();
+        ClientResult[] results = run(client, url, clients, seconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        report(results, elapsed);
+        if (server != null)
+            server.stop(0);
+    }
+
+    //Runs the clients for the given number of seconds
+    private static ClientResult[] run(HttpClient client, String url, int clients, int seconds) throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<ClientResult>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            SplittableRandom rand = new SplittableRandom(i);
+            futures.add(pool.submit(() -> client(client, url, rand, end)));
+        }
+        ClientResult[] results = new ClientResult[clients];
+        for (int i = 0; i < clients; i++) {
+            results[i] = futures.get(i).get();
+        }
+        pool.shutdown();
+        return results;
+    }
+
+    //Sends requests one after another until the end time
+    private static ClientResult client(HttpClient client, String url, SplittableRandom rand, long end) {
+        long[] latencies = new long[1024];
+        int samples = 0;
+        long count = 0, errors = 0;
+        while (System.nanoTime() < end) {
+            //any stronghold within the outer ring, the server guesses the ones between rings
+            int x = rand.nextInt(-24320, 24321);
+            int z = rand.nextInt(-24320, 24321);
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url + "/predict?fallback=guess&x=" + x + "&z=" + z))
+                                         .GET().build();
+            long t = System.nanoTime();
+            try {
+                HttpResponse<Void> res = client.send(req, HttpResponse.BodyHandlers.discarding());
+                if (res.statusCode() != 200)
+                    errors++;
+            } catch (IOException e) {
+                errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            t = System.nanoTime() - t;
+            count++;
+            if (samples < MAX_SAMPLES) {
+                if (samples == latencies.length)
+                    latencies = Arrays.copyOf(latencies, samples * 2);
+                latencies[samples++] = t;
+            }
+        }
+        return new ClientResult(count, errors, latencies, samples);
+    }
+
+    //Prints the throughput and latency percentiles of all clients
+    private static void report(ClientResult[] results, double seconds) {
+        long count = 0, errors = 0;
+        int samples = 0;
+        for (ClientResult r : results) {
+            count += r.count();
+            errors += r.errors();
+            samples += r.samples();
+        }
+        long[] all = new long[samples];
+        int i = 0;
+        for (ClientResult r : results) {
+            System.arraycopy(r.latencies(), 0, all, i, r.samples());
+            i += r.samples();
+        }
+        Arrays.sort(all);
+        System.out.printf(Locale.ROOT, "requests: %d, errors: %d, throughput: %.1f req/s%n", count, errors,
+                          count / seconds);
+        System.out.printf(Locale.ROOT, "latency p50: %.3f ms, p90: %.3f ms, p99: %.3f ms, p99.9: %.3f ms, max: %.3f ms%n",
+                          percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99),
+                          percentile(all, 0.999), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    //Gets a percentile of the sorted latencies in milliseconds
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+}
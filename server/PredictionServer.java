@@ -0,0 +1,335 @@
+package server;
+
+import cli.StrongholdCLI;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import metrics.Metrics;
+import model.IllegalCoordsException;
+import model.Position;
+import model.Prediction;
+import model.Ring;
+import model.RingCalculator;
+import model.RingClassifier;
+import model.RingConfig;
+import model.RingPolicy;
+import model.RingTables;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small local HTTP service giving the calculations of the model package as JSON, for bots and web pages that
+ * cannot run the GUI. Every request is handled on its own virtual thread when the JVM supports them, otherwise
+ * on a cached thread pool.
+ * <p>
+ * Endpoints:
+ * <ul>
+ *     <li>{@code GET /ring?x=&z=} gives the ring the coordinates are in, or a guess and its confidence</li>
+ *     <li>{@code GET /predict?x=&z=&nether=&fallback=} gives the calculated strongholds for a found stronghold</li>
+ *     <li>{@code POST /batch?nether=&fallback=} takes found strongholds in any format StrongholdCLI reads and
+ *     streams back one JSON line of predictions per input line</li>
+ *     <li>{@code GET /metrics?format=json|text} gives the metrics recorded so far, see {@link Metrics}</li>
+ *     <li>{@code GET /rings} gives the ring config in use and the bounds of its rings</li>
+ *     <li>{@code POST /rings} takes a ring config as properties or datapack JSON, see {@link RingConfig}, and uses
+ *     it for every request from then on</li>
+ * </ul>
+ * The fallback parameter decides what happens to coordinates that are not in a ring: skip (the default) gives an
+ * error, guess guesses the ring and ring:N uses ring N.
+ */
+public class PredictionServer {
+    /**
+     * Default port the server listens on
+     */
+    public static final int DEFAULT_PORT = 8180;
+    /**
+     * The underlying HTTP server
+     */
+    private final HttpServer server;
+    /**
+     * Executor that runs the request handlers
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server listening on the loopback address, call start() to start handling requests. Small responses
+     * are only sent without delay if the JVM-wide sun.net.httpserver.nodelay property is true before the first server
+     * is created, which {@link #main} does and programs embedding the server should do too.
+     *
+     * @param port The port to listen on, 0 for any free port
+     * @throws IOException If the server cannot be bound to the port
+     */
+    public PredictionServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/ring", this::ring);
+        server.createContext("/predict", this::predict);
+        server.createContext("/batch", this::batch);
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/rings", this::rings);
+    }
+
+    /**
+     * Starts handling requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most the given number of seconds for requests being handled to finish
+     *
+     * @param delay Most seconds to wait
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    //GET /ring
+    private void ring(HttpExchange ex) throws IOException {
+        try {
+            Map<String, String> q = query(ex);
+            double x = number(q, "x");
+            double z = number(q, "z");
+            //only classifies, so nothing is counted as a fallback or an IllegalCoordsException
+            Ring r = RingCalculator.findRing(x, z);
+            if (r != null) {
+                send(ex, 200, "{\"ring\":" + r.getRingNum() + ",\"numStrongholds\":" + r.getNumStrongholds() + "}");
+            } else {
+                Ring guess = RingCalculator.nearestRing(x, z);
+                double confidence = RingClassifier.confidences(x, z)[guess.ordinal()];
+                send(ex, 200, "{\"ring\":0,\"guess\":" + guess.getRingNum() + ",\"confidence\":"
+                              + String.format(Locale.ROOT, "%.4f", confidence) + "}");
+            }
+        } catch (IllegalArgumentException e) {
+            error(ex, e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    //GET /predict
+    private void predict(HttpExchange ex) throws IOException {
+        try {
+            Map<String, String> q = query(ex);
+            double x = number(q, "x");
+            double z = number(q, "z");
+            boolean nether = Boolean.parseBoolean(q.get("nether"));
+            Prediction p;
+            try {
+                p = RingCalculator.calculate(new Position(x, z), policy(q.get("fallback")), nether);
+            } catch (IllegalCoordsException e) {
+                send(ex, 422, "{\"error\":\"Coordinates not inside of a Stronghold Ring\"}");
+                return;
+            }
+            int n = p.size();
+            StringBuilder sb = new StringBuilder(32 + n * 20);
+            sb.append("{\"ring\":").append(p.getRing().getRingNum()).append(",\"predictions\":[");
+            for (int i = 0; i < n; i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append('[').append((long) p.getX(i)).append(',').append((long) p.getZ(i)).append(']');
+            }
+            send(ex, 200, sb.append("]}").toString());
+        } catch (IllegalArgumentException e) {
+            error(ex, e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    //POST /batch
+    private void batch(HttpExchange ex) throws IOException {
+        try {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                send(ex, 405, "{\"error\":\"Use POST\"}");
+                return;
+            }
+            Map<String, String> q = query(ex);
+            boolean nether = Boolean.parseBoolean(q.get("nether"));
+            String fallback = q.getOrDefault("fallback", "skip");
+            StrongholdCLI.Fallback policy;
+            Ring manual = null;
+            if (fallback.equals("skip")) {
+                policy = StrongholdCLI.Fallback.SKIP;
+            } else if (fallback.equals("guess")) {
+                policy = StrongholdCLI.Fallback.GUESS;
+            } else {
+                policy = StrongholdCLI.Fallback.RING;
+                manual = manualRing(fallback);
+            }
+            ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            ex.sendResponseHeaders(200, 0); //chunked, the output is streamed as it is calculated
+            try (InputStream in = ex.getRequestBody(); OutputStream os = ex.getResponseBody()) {
+                new StrongholdCLI(os, nether, policy, manual, true).run(in);
+            }
+        } catch (IllegalArgumentException e) {
+            error(ex, e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    //GET /metrics
+    private void metrics(HttpExchange ex) throws IOException {
+        try {
+            if ("text".equals(query(ex).get("format"))) {
+                byte[] body = Metrics.dumpText().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            } else {
+                send(ex, 200, Metrics.dumpJson());
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    //GET and POST /rings
+    private void rings(HttpExchange ex) throws IOException {
+        try {
+            RingTables t;
+            if ("POST".equals(ex.getRequestMethod())) {
+                String text;
+                try (InputStream in = ex.getRequestBody()) {
+                    text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                RingConfig config = text.stripLeading().startsWith("{") ? RingConfig.parseJson(text)
+                                                                        : RingConfig.parseProperties(text);
+                t = RingTables.install(config);
+            } else {
+                t = RingTables.current();
+            }
+            RingConfig c = t.getConfig();
+            StringBuilder sb = new StringBuilder(64 + t.getRings() * 48);
+            sb.append("{\"distance\":").append(c.distance()).append(",\"spread\":").append(c.spread())
+              .append(",\"count\":").append(c.count()).append(",\"rings\":[");
+            for (Ring r : t.rings()) {
+                if (r.ordinal() > 0)
+                    sb.append(',');
+                sb.append("{\"ring\":").append(r.getRingNum()).append(",\"min\":").append(t.getMin(r))
+                  .append(",\"max\":").append(t.getMax(r)).append(",\"numStrongholds\":")
+                  .append(t.getNumStrongholds(r)).append('}');
+            }
+            send(ex, 200, sb.append("]}").toString());
+        } catch (IllegalArgumentException e) {
+            error(ex, e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    //The ring policy for a fallback parameter
+    private static RingPolicy policy(String fallback) {
+        if (fallback == null || fallback.equals("skip"))
+            return RingPolicy.STRICT;
+        if (fallback.equals("guess"))
+            return RingPolicy.GUESS;
+        return RingPolicy.fallback(manualRing(fallback));
+    }
+
+    //Parses a fallback of the form ring:N
+    private static Ring manualRing(String fallback) {
+        if (!fallback.startsWith("ring:"))
+            throw new IllegalArgumentException("Invalid fallback, must be skip, guess or ring:N");
+        return Ring.fromNumber(Integer.parseInt(fallback.substring("ring:".length())));
+    }
+
+    //Parses the query string of a request
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> map = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null)
+            return map;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+                map.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+
+    //Gets a required number from the query
+    private static double number(Map<String, String> q, String key) {
+        String v = q.get(key);
+        if (v == null)
+            throw new IllegalArgumentException("Missing parameter " + key);
+        return Double.parseDouble(v.trim());
+    }
+
+    //Sends an error response, unless the response was already started
+    private static void error(HttpExchange ex, String msg) throws IOException {
+        if (ex.getResponseCode() == -1)
+            send(ex, 400, "{\"error\":\"" + msg.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+    }
+
+    //Sends a JSON response
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task. Virtual threads are looked up
+     * reflectively so the server still runs on JVMs without them, using a cached thread pool instead.
+     *
+     * @return The executor to handle requests on
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Turns off Nagle's algorithm for the HTTP servers of this JVM unless the property is already set. Headers and
+     * body are written separately, so without this every small response is delayed. The property is only read when
+     * the first server is created.
+     */
+    static void setNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Starts the server
+     *
+     * @param args An optional port to listen on
+     */
+    public static void main(String[] args) throws IOException {
+        setNoDelay();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        PredictionServer server = new PredictionServer(port);
+        server.start();
+        System.out.println("Listening on http://127.0.0.1:" + server.getPort());
+    }
+}
@@ -0,0 +1,37 @@
+package session;
+
+import model.StrongholdSet;
+
+/**
+ * Saved progress of one player hunting the strongholds of one world: the stronghold they found, the ring it is in,
+ * the dimension they view the coordinates in and which predictions are left to visit.
+ *
+ * @param id The id of the session, see {@link SessionStore#sessionId}
+ * @param x The x coordinate of the found stronghold as the user entered it
+ * @param z The z coordinate of the found stronghold as the user entered it
+ * @param ring The number of the ring the found stronghold is in, 1 to 8
+ * @param nether Whether the coordinates are viewed as nether coordinates
+ * @param remaining Bit mask of the slots that have not been removed, see {@link StrongholdSet#slotMask()}
+ * @param lastAccess When the session was last changed, in milliseconds since the epoch
+ */
+public record Session(long id, double x, double z, int ring, boolean nether, long remaining, long lastAccess) {
+    /**
+     * Copies the session with a slot removed
+     *
+     * @param slot The slot to remove
+     * @param now The time of the change in milliseconds since the epoch
+     */
+    public Session withoutSlot(int slot, long now) {
+        return new Session(id, x, z, ring, nether, remaining & ~(1L << slot), now);
+    }
+
+    /**
+     * Copies the session with the coordinates viewed in a different dimension
+     *
+     * @param nether Whether the coordinates are viewed as nether coordinates
+     * @param now The time of the change in milliseconds since the epoch
+     */
+    public Session withNether(boolean nether, long now) {
+        return new Session(id, x, z, ring, nether, remaining, now);
+    }
+}
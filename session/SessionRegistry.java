@@ -0,0 +1,456 @@
+package session;
+
+import model.IllegalCoordsException;
+import model.Prediction;
+import model.PredictionCache;
+import model.Ring;
+import model.RingCalculator;
+import model.ThrowMatcher;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Tracks the stronghold hunt of every player on a network in one JVM. Sessions are kept in a ConcurrentHashMap
+ * keyed by world and player, and the parts of a session that change (the remaining predictions, the ring and the
+ * dimension) are packed into a single AtomicLong, so every change is one compare-and-set and no session ever waits
+ * on another.
+ * <p>
+ * Nothing mutable is shared: a session only holds the coordinates the player entered and its packed state, and
+ * predictions come from a shared {@link PredictionCache} of immutable Predictions, so players who found the same
+ * stronghold share one calculation.
+ * <p>
+ * A player who throws an Eye of Ender near a prediction can send the throw to {@link #matchThrow}, which finds the
+ * prediction it points to and removes it. The throws of a session are matched by a {@link ThrowMatcher} that is
+ * only created once the player throws an eye and is only touched by that session.
+ * <p>
+ * Sessions not used for a while can be evicted with {@link #evictIdle()}. If the registry has a
+ * {@link SessionStore}, evicted sessions are saved to it and loaded back the next time the player is seen. An
+ * eviction first marks the packed state as evicted, so a change made by a thread that already had the session fails
+ * its compare-and-set and is made again on the session that replaces it instead of being lost. The store is never
+ * read or written inside a call to the map: a session still in the map while it is saved is copied back from its
+ * final state, and a session loaded from the store is loaded by one thread at a time and then added if absent.
+ */
+public class SessionRegistry {
+    /**
+     * Bits of the packed state holding the remaining slots, enough for the largest ring
+     */
+    private static final int SLOT_BITS = 48;
+    /**
+     * Mask of the remaining slots in the packed state
+     */
+    private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+    /**
+     * Bit of the packed state set when the session is in the nether
+     */
+    private static final long NETHER = 1L << (SLOT_BITS + 4);
+    /**
+     * Bit of the packed state set while the session is being evicted, after which the entry is never changed again
+     */
+    private static final long EVICTED = 1L << (SLOT_BITS + 5);
+    /**
+     * Estimated bytes used by a session apart from its world and player names, with compressed references: the
+     * map node (32), key (24), session (48) and its AtomicLong (24), and about two references of map table (8)
+     */
+    private static final long SESSION_BYTES = 32 + 24 + 48 + 24 + 8;
+    /**
+     * The rings by number - 1, kept since values() copies the array every call
+     */
+    private static final Ring[] RINGS = Ring.values();
+    /**
+     * The sessions by world and player
+     */
+    private final ConcurrentHashMap<Key, Entry> sessions = new ConcurrentHashMap<>();
+    /**
+     * The loads from the store in progress by world and player
+     */
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    /**
+     * Shared by every session for their predictions
+     */
+    private final PredictionCache cache;
+    /**
+     * Milliseconds a session can go unused before it is evicted
+     */
+    private final long idleMillis;
+    /**
+     * Where evicted sessions are saved, null to forget them
+     */
+    private final SessionStore store;
+
+    /**
+     * World and player a session belongs to
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     */
+    private record Key(String world, String player) {
+    }
+
+    /**
+     * A session, the coordinates never change and the rest is packed into state
+     */
+    private static class Entry {
+        /**
+         * Coordinates of the found stronghold as the player entered them
+         */
+        private final double x, z;
+        /**
+         * Remaining slots in the low bits, then the ring number and the nether bit
+         */
+        private final AtomicLong state;
+        /**
+         * When the session was last used in milliseconds since the epoch, racy updates only make it a little early
+         */
+        private volatile long lastAccess;
+        /**
+         * Matches the throws of the session, null until the first throw, guarded by the entry
+         */
+        private ThrowMatcher matcher;
+
+        Entry(double x, double z, long state, long lastAccess) {
+            this.x = x;
+            this.z = z;
+            this.state = new AtomicLong(state);
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Creates a registry
+     *
+     * @param idleMillis Milliseconds a session can go unused before {@link #evictIdle()} evicts it
+     * @param cacheSize Most predictions to keep in the shared cache
+     * @param store Where evicted sessions are saved and loaded back from, null to forget them
+     * @throws IllegalArgumentException If the idle time is not positive or the cache size is not positive
+     */
+    public SessionRegistry(long idleMillis, int cacheSize, SessionStore store) {
+        if (idleMillis <= 0)
+            throw new IllegalArgumentException("Idle time must be positive");
+        this.idleMillis = idleMillis;
+        this.cache = new PredictionCache(cacheSize, 0);
+        this.store = store;
+    }
+
+    /**
+     * Starts a new session for a player who found a stronghold, replacing any session they had in the world
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param x The x coordinate of the found stronghold
+     * @param z The z coordinate of the found stronghold
+     * @param nether Whether the player views the coordinates as nether coordinates
+     * @return The new session
+     * @throws IllegalCoordsException If the coordinates are not within the bounds of a ring
+     */
+    public Session start(String world, String player, double x, double z, boolean nether)
+            throws IllegalCoordsException {
+        return start(world, player, x, z, RingCalculator.getRing(x, z), nether);
+    }
+
+    /**
+     * Starts a new session in a given ring, replacing any session the player had in the world
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param x The x coordinate of the found stronghold
+     * @param z The z coordinate of the found stronghold
+     * @param ring The ring the found stronghold is in
+     * @param nether Whether the player views the coordinates as nether coordinates
+     * @return The new session
+     */
+    public Session start(String world, String player, double x, double z, Ring ring, boolean nether) {
+        Key key = new Key(world, player);
+        Entry e = new Entry(x, z, pack(allSlots(ring), ring.getRingNum(), nether), System.currentTimeMillis());
+        sessions.put(key, e);
+        return snapshot(key, e, e.state.get());
+    }
+
+    /**
+     * Gets a session
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @return The session, null if the player has no session in the world
+     */
+    public Session get(String world, String player) {
+        Key key = new Key(world, player);
+        Entry e = entry(key);
+        return e == null ? null : snapshot(key, e, e.state.get());
+    }
+
+    /**
+     * Gets the predictions of a session in the dimension the player views them in. The prediction with index i is
+     * slot i + 1, check {@link Session#remaining()} for which are left.
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @return The predictions, null if the player has no session in the world
+     */
+    public Prediction predictions(String world, String player) {
+        Entry e = entry(new Key(world, player));
+        if (e == null)
+            return null;
+        long s = e.state.get();
+        return cache.get(ring(s), e.x, e.z, (s & NETHER) != 0);
+    }
+
+    /**
+     * Removes a prediction the player has visited from their session
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param slot The slot of the prediction
+     * @return The updated session, null if the player has no session in the world
+     * @throws IllegalArgumentException If the slot is not a slot of the session's ring
+     */
+    public Session removeSlot(String world, String player, int slot) {
+        return update(new Key(world, player), s -> {
+            if (slot < 1 || slot >= ring(s).getNumStrongholds())
+                throw new IllegalArgumentException("Invalid slot " + slot + " for ring " + ring(s).getRingNum());
+            return s & ~(1L << slot);
+        });
+    }
+
+    /**
+     * Matches an Eye of Ender thrown near a prediction to the prediction it points to. A close enough throw
+     * confirms the prediction, removing it from the session and correcting the angle of the ring for the later
+     * throws of the session. The corrected angle is forgotten if the session is evicted.
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param x The x coordinate the eye was thrown from
+     * @param z The z coordinate the eye was thrown from
+     * @param yaw The direction the eye flew in as Minecraft yaw in degrees
+     * @return The match, null if the player has no session in the world or no predictions are left
+     */
+    public ThrowMatcher.Match matchThrow(String world, String player, double x, double z, double yaw) {
+        Key key = new Key(world, player);
+        Entry e = entry(key);
+        if (e == null)
+            return null;
+        ThrowMatcher.Match m;
+        Ring ring;
+        synchronized (e) {
+            long s = e.state.get();
+            ring = ring(s);
+            long remaining = s & SLOT_MASK;
+            //start over if the ring was changed or slots came back since the last throw
+            if (e.matcher == null || e.matcher.getRing() != ring || (remaining & ~e.matcher.getRemaining()) != 0)
+                e.matcher = new ThrowMatcher(ring, e.x, e.z, remaining);
+            else
+                e.matcher.retain(remaining);
+            m = e.matcher.confirm(x, z, yaw);
+        }
+        //if the ring was changed while matching, the slot is not this ring's
+        if (m != null && m.confirmed())
+            update(key, s -> ring(s) == ring ? s & ~(1L << m.slot()) : s);
+        return m;
+    }
+
+    /**
+     * Changes the ring of a session, such as when the ring was guessed wrong. Every prediction of the new ring is
+     * remaining.
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param ring The new ring
+     * @return The updated session, null if the player has no session in the world
+     */
+    public Session setRing(String world, String player, Ring ring) {
+        return update(new Key(world, player), s -> pack(allSlots(ring), ring.getRingNum(), (s & NETHER) != 0));
+    }
+
+    /**
+     * Changes the dimension a session's coordinates are viewed in
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @param nether Whether to view the coordinates as nether coordinates
+     * @return The updated session, null if the player has no session in the world
+     */
+    public Session setNether(String world, String player, boolean nether) {
+        return update(new Key(world, player), s -> nether ? s | NETHER : s & ~NETHER);
+    }
+
+    /**
+     * Ends a session
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @return True if the player had a session in the world
+     * @throws IOException If the registry has a store and the session could not be removed from it
+     */
+    public boolean end(String world, String player) throws IOException {
+        boolean removed = sessions.remove(new Key(world, player)) != null;
+        if (store != null)
+            removed |= store.remove(SessionStore.sessionId(world, player));
+        return removed;
+    }
+
+    /**
+     * Evicts every session that has not been used for the idle time, saving it to the store if there is one
+     *
+     * @return The number of sessions evicted
+     * @throws IOException If an evicted session could not be saved, the sessions before it are already saved
+     */
+    public int evictIdle() throws IOException {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        for (Map.Entry<Key, Entry> m : sessions.entrySet()) {
+            Key key = m.getKey();
+            Entry e = m.getValue();
+            long s = e.state.get();
+            if (e.lastAccess >= cutoff || (s & EVICTED) != 0 || !e.state.compareAndSet(s, s | EVICTED))
+                continue;
+            if (store != null) {
+                try {
+                    store.put(snapshot(key, e, s));
+                } catch (IOException ex) {
+                    //the marked entry can never change again, a copy of it stays in memory instead
+                    sessions.replace(key, e, new Entry(e.x, e.z, s, e.lastAccess));
+                    throw ex;
+                }
+            }
+            //fails if the session was used while it was saved and copied back, the copy stays in memory
+            if (sessions.remove(key, e))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the number of sessions in memory
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets the shared prediction cache, for its hit and miss counts
+     */
+    public PredictionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Estimates the memory a session uses on a 64 bit JVM with compressed references, not counting the shared
+     * prediction cache or the throw matcher of a session whose player has thrown an eye
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @return The estimated number of bytes
+     */
+    public static long estimateBytes(String world, String player) {
+        return SESSION_BYTES + stringBytes(world) + stringBytes(player);
+    }
+
+    /**
+     * Estimates the memory used by every session in memory, not counting the shared prediction cache. World names
+     * are counted once per session even though sessions in the same world usually share the string.
+     *
+     * @return The estimated number of bytes
+     */
+    public long estimateBytes() {
+        long total = 0;
+        for (Key k : sessions.keySet()) {
+            total += estimateBytes(k.world(), k.player());
+        }
+        return total;
+    }
+
+    //Gets the session of a key, loading it from the store if it was evicted, and marks it as used
+    private Entry entry(Key key) {
+        Entry e = sessions.get(key);
+        if (e != null && (e.state.get() & EVICTED) != 0)
+            e = revive(key, e);
+        else if (e == null)
+            e = load(key);
+        if (e != null)
+            e.lastAccess = System.currentTimeMillis();
+        return e;
+    }
+
+    //Replaces a session being evicted by a copy of its final state, which is what the store gets
+    private Entry revive(Key key, Entry e) {
+        Entry copy = new Entry(e.x, e.z, e.state.get() & ~EVICTED, e.lastAccess);
+        if (sessions.replace(key, e, copy))
+            return copy;
+        //copied back by another thread, or saved and removed, in which case the store has it
+        Entry now = sessions.get(key);
+        return now != null ? now : load(key);
+    }
+
+    //Loads an evicted session from the store, null if there is none, waiting for another thread loading it. A load
+    //only starts after the previous one has added its session, so it never reads a copy older than one in memory.
+    private Entry load(Key key) {
+        if (store == null)
+            return null;
+        CompletableFuture<Entry> done = new CompletableFuture<>();
+        CompletableFuture<Entry> running = loading.putIfAbsent(key, done);
+        if (running != null)
+            return running.join();
+        try {
+            Session s = store.get(SessionStore.sessionId(key.world(), key.player()));
+            Entry e = null;
+            if (s != null) {
+                Entry loaded = new Entry(s.x(), s.z(), pack(s.remaining() & SLOT_MASK, s.ring(), s.nether()),
+                                         s.lastAccess());
+                Entry old = sessions.putIfAbsent(key, loaded);
+                e = old != null ? old : loaded;
+            }
+            done.complete(e);
+            return e;
+        } catch (RuntimeException | Error ex) {
+            done.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, done);
+        }
+    }
+
+    //Changes the packed state of a session, moving to the session loaded back from the store if it is evicted first
+    private Session update(Key key, LongUnaryOperator change) {
+        for (Entry e = entry(key); e != null; e = entry(key)) {
+            long s;
+            while (((s = e.state.get()) & EVICTED) == 0) {
+                long next = change.applyAsLong(s);
+                if (e.state.compareAndSet(s, next))
+                    return snapshot(key, e, next);
+            }
+        }
+        return null;
+    }
+
+    //Makes the immutable view of a session from a packed state
+    private static Session snapshot(Key key, Entry e, long s) {
+        return new Session(SessionStore.sessionId(key.world(), key.player()), e.x, e.z, ring(s).getRingNum(),
+                           (s & NETHER) != 0, s & SLOT_MASK, e.lastAccess);
+    }
+
+    //Packs the state of a session
+    private static long pack(long remaining, int ring, boolean nether) {
+        return remaining | (long) ring << SLOT_BITS | (nether ? NETHER : 0);
+    }
+
+    //Gets the ring of a packed state
+    private static Ring ring(long s) {
+        return RINGS[(int) (s >>> SLOT_BITS & 0xf) - 1];
+    }
+
+    //Mask of every predicted slot of a ring, slot 0 is the found stronghold
+    private static long allSlots(Ring ring) {
+        return ((1L << ring.getNumStrongholds()) - 1) & ~1L;
+    }
+
+    //Estimated bytes of a String and its Latin-1 or UTF-16 array
+    private static long stringBytes(String s) {
+        boolean latin1 = s.chars().allMatch(c -> c < 256);
+        long array = 16 + (long) s.length() * (latin1 ? 1 : 2);
+        return 24 + (array + 7 & ~7L);
+    }
+}
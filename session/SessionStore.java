@@ -0,0 +1,473 @@
+package session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Stores sessions in a single memory-mapped file, so the progress of many players across many worlds survives
+ * restarts. The file is a header followed by a hash table of fixed size records, found by the session id with
+ * linear probing, so a session is looked up, saved or removed in O(1) without reading the rest of the file, and
+ * opening the file only maps it.
+ * <p>
+ * The header and every record have two copies, each with a sequence number and a checksum. A change is written to
+ * the older copy and flushed to disk, so a crash part way through a write leaves the newer copy intact and the
+ * header or record reads as it was before the change. When the table fills up it is rehashed into a table twice
+ * the size written after it in the same file, which is flushed before the header is changed to point to it, so the
+ * file is never moved or replaced while it is mapped. The space of the old table is not reused. A new file is
+ * written under a temporary name, renamed into place and its directory flushed where the platform allows it.
+ * <p>
+ * File layout, all numbers little endian:
+ * <pre>
+ * header  (64 bytes): two copies of
+ *     magic (4), version (4), capacity (4), number of records in use including removed ones (4), offset of the
+ *     table (8), sequence (4), checksum (4)
+ * table: capacity records of 128 bytes, two copies of
+ *     id (8), sequence (8), x (8), z (8), remaining slots (8), last access (8), ring (4), flags (4), checksum (4),
+ *     unused (4)
+ * </pre>
+ * A store is safe to share between threads, but only one store should have a file open at a time.
+ */
+public class SessionStore implements Closeable {
+    /**
+     * Identifies a session file, "SHSS"
+     */
+    private static final int MAGIC = 0x53534853;
+    /**
+     * Version of the file layout
+     */
+    private static final int VERSION = 2;
+    /**
+     * Size of the header, both copies, in bytes
+     */
+    private static final int HEADER = 64;
+    /**
+     * Size of one copy of the header in bytes
+     */
+    private static final int HEADER_COPY = 32;
+    /**
+     * Bytes of a header copy covered by its checksum
+     */
+    private static final int HEADER_CHECKED = 28;
+    /**
+     * Size of one copy of a record in bytes
+     */
+    private static final int COPY = 64;
+    /**
+     * Size of a record, both copies, in bytes
+     */
+    private static final int RECORD = 2 * COPY;
+    /**
+     * Bytes of a copy covered by its checksum
+     */
+    private static final int CHECKED = 56;
+    /**
+     * Number of records a new file has room for
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Most records a file can have room for, so the whole file fits in one mapping
+     */
+    private static final int MAX_CAPACITY = 1 << 23;
+    /**
+     * Flag of a copy whose session is in the nether
+     */
+    private static final int NETHER = 1;
+    /**
+     * Flag of a copy whose session has been removed, kept so probing continues past it
+     */
+    private static final int REMOVED = 2;
+    /**
+     * Offsets of the fields of a copy
+     */
+    private static final int ID = 0, SEQ = 8, X = 16, Z = 24, REMAINING = 32, ACCESS = 40, RING = 48, FLAGS = 52,
+            CRC = 56;
+    /**
+     * Offsets of the fields of a header copy
+     */
+    private static final int HEAD_MAGIC = 0, HEAD_VERSION = 4, CAPACITY = 8, USED = 12, TABLE = 16, HEAD_SEQ = 24,
+            HEAD_CRC = 28;
+    /**
+     * The file of the store
+     */
+    private final Path file;
+    /**
+     * Channel of the open file
+     */
+    private FileChannel channel;
+    /**
+     * The mapped header
+     */
+    private MappedByteBuffer head;
+    /**
+     * The mapped table
+     */
+    private MappedByteBuffer map;
+    /**
+     * Offset in the file of the table
+     */
+    private long table;
+    /**
+     * Offset of the newest header copy, and its sequence number
+     */
+    private int headCopy, headSeq;
+    /**
+     * Number of records the table has room for, a power of two
+     */
+    private int capacity;
+    /**
+     * Number of records in use, including removed ones that still take up a place in the table
+     */
+    private int used;
+    /**
+     * Number of sessions stored, -1 until it is first needed since counting them reads the whole file
+     */
+    private int size = -1;
+    /**
+     * Reused to calculate checksums
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a session file, creating it if it does not exist
+     *
+     * @param file The file to open
+     * @throws IOException If the file cannot be read or written, or is not a session file
+     */
+    public SessionStore(Path file) throws IOException {
+        this.file = file;
+        //a crash while creating the file leaves the new file behind under its temporary name
+        Files.deleteIfExists(tempFile());
+        if (!Files.exists(file) || Files.size(file) == 0)
+            create();
+        open();
+    }
+
+    /**
+     * Makes the id of a session from the world and player it belongs to
+     *
+     * @param world Name or seed of the world
+     * @param player Name or UUID of the player
+     * @return A 64 bit hash of the world and player
+     */
+    public static long sessionId(String world, String player) {
+        //FNV-1a over both strings with a separator so ("ab", "c") and ("a", "bc") differ
+        long h = 0xcbf29ce484222325L;
+        for (byte b : (world + '\0' + player).getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Gets a session
+     *
+     * @param id The id of the session
+     * @return The session, null if there is none with the id
+     */
+    public synchronized Session get(long id) {
+        int rec = find(id);
+        if (rec < 0)
+            return null;
+        int c = current(rec);
+        if ((map.getInt(c + FLAGS) & REMOVED) != 0)
+            return null;
+        return read(c);
+    }
+
+    /**
+     * Saves a session, replacing any session with the same id
+     *
+     * @param s The session to save
+     * @throws IOException If the file needs to grow and cannot be
+     */
+    public synchronized void put(Session s) throws IOException {
+        int rec = find(s.id());
+        if (rec < 0) {
+            if (2 * (used + 1) > capacity) {
+                resize();
+                rec = find(s.id());
+            }
+            rec = -rec - 1;
+            write(rec, s, 0);
+            used++;
+            if (size >= 0)
+                size++;
+            writeHeader();
+            return;
+        }
+        if ((map.getInt(current(rec) + FLAGS) & REMOVED) != 0 && size >= 0)
+            size++;
+        write(rec, s, 0);
+    }
+
+    /**
+     * Removes a visited prediction from a session in place
+     *
+     * @param id The id of the session
+     * @param slot The slot of the prediction to remove
+     * @return The updated session, null if there is no session with the id
+     */
+    public synchronized Session removeSlot(long id, int slot) {
+        Session s = get(id);
+        if (s == null)
+            return null;
+        s = s.withoutSlot(slot, System.currentTimeMillis());
+        write(find(id), s, 0);
+        return s;
+    }
+
+    /**
+     * Removes a session. Its record stays in the table marked as removed until the table is next resized.
+     *
+     * @param id The id of the session
+     * @return True if there was a session with the id
+     */
+    public synchronized boolean remove(long id) {
+        Session s = get(id);
+        if (s == null)
+            return false;
+        write(find(id), s, REMOVED);
+        if (size >= 0)
+            size--;
+        return true;
+    }
+
+    /**
+     * Gets the number of sessions stored
+     */
+    public synchronized int size() {
+        //the count of sessions is not kept in the file, so a crash can never leave it wrong
+        if (size < 0) {
+            size = 0;
+            for (int i = 0; i < capacity; i++) {
+                int c = current(i);
+                if (c >= 0 && (map.getInt(c + FLAGS) & REMOVED) == 0)
+                    size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Closes the file, every change has already been written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        head.force();
+        channel.close();
+    }
+
+    //Finds the record of an id, or -(free record) - 1 if the id is not in the table
+    private int find(long id) {
+        int mask = capacity - 1;
+        for (int i = spread(id) & mask, n = 0; n < capacity; i = (i + 1) & mask, n++) {
+            int c = current(i);
+            if (c < 0)
+                return -i - 1;
+            if (map.getLong(c + ID) == id)
+                return i;
+        }
+        throw new IllegalStateException("Session table is full");
+    }
+
+    //Gets the offset of the newest valid copy of a record, -1 if neither copy is valid and so the record is free
+    private int current(int rec) {
+        int a = rec * RECORD, b = a + COPY;
+        boolean va = valid(a), vb = valid(b);
+        if (va && vb)
+            return map.getLong(a + SEQ) - map.getLong(b + SEQ) >= 0 ? a : b;
+        return va ? a : vb ? b : -1;
+    }
+
+    //Whether the checksum of a copy matches its contents, the checksum of all zeros is not zero so an unwritten
+    //copy is never valid
+    private boolean valid(int copy) {
+        return map.getInt(copy + CRC) == checksum(map, copy, CHECKED);
+    }
+
+    //Reads the session in a copy
+    private Session read(int c) {
+        return new Session(map.getLong(c + ID), map.getDouble(c + X), map.getDouble(c + Z), map.getInt(c + RING),
+                           (map.getInt(c + FLAGS) & NETHER) != 0, map.getLong(c + REMAINING),
+                           map.getLong(c + ACCESS));
+    }
+
+    //Writes a session over the older copy of a record and flushes it, the newer copy stays valid until it is done
+    private void write(int rec, Session s, int flags) {
+        int cur = current(rec);
+        int a = rec * RECORD;
+        int c = cur == a ? a + COPY : a;
+        long seq = cur < 0 ? 1 : map.getLong(cur + SEQ) + 1;
+        writeCopy(map, c, s, seq, flags);
+        map.force(c, COPY);
+    }
+
+    //Writes a copy with its checksum last
+    private void writeCopy(ByteBuffer buf, int c, Session s, long seq, int flags) {
+        buf.putLong(c + ID, s.id());
+        buf.putLong(c + SEQ, seq);
+        buf.putDouble(c + X, s.x());
+        buf.putDouble(c + Z, s.z());
+        buf.putLong(c + REMAINING, s.remaining());
+        buf.putLong(c + ACCESS, s.lastAccess());
+        buf.putInt(c + RING, s.ring());
+        buf.putInt(c + FLAGS, flags | (s.nether() ? NETHER : 0));
+        buf.putInt(c + CRC, checksum(buf, c, CHECKED));
+    }
+
+    //Writes the capacity, number of records in use and offset of the table over the older header copy and flushes
+    //it, the newer copy stays valid until it is done
+    private void writeHeader() {
+        int c = headCopy == 0 ? HEADER_COPY : 0;
+        writeHeaderCopy(head, c, capacity, used, table, ++headSeq);
+        head.force(c, HEADER_COPY);
+        headCopy = c;
+    }
+
+    //Writes a header copy with its checksum last
+    private void writeHeaderCopy(ByteBuffer buf, int c, int cap, int inUse, long offset, int seq) {
+        buf.putInt(c + HEAD_MAGIC, MAGIC);
+        buf.putInt(c + HEAD_VERSION, VERSION);
+        buf.putInt(c + CAPACITY, cap);
+        buf.putInt(c + USED, inUse);
+        buf.putLong(c + TABLE, offset);
+        buf.putInt(c + HEAD_SEQ, seq);
+        buf.putInt(c + HEAD_CRC, checksum(buf, c, HEADER_CHECKED));
+    }
+
+    //Whether a header copy is whole and of this version
+    private boolean validHeader(int c) {
+        return head.getInt(c + HEAD_MAGIC) == MAGIC && head.getInt(c + HEAD_VERSION) == VERSION
+               && head.getInt(c + HEAD_CRC) == checksum(head, c, HEADER_CHECKED);
+    }
+
+    //Calculates the checksum of part of a buffer
+    private int checksum(ByteBuffer buf, int from, int length) {
+        crc.reset();
+        crc.update(buf.slice(from, length));
+        return (int) crc.getValue();
+    }
+
+    //Opens the session file, reads the newest valid header copy and maps the table it points to
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER)
+                throw new IOException(file + " is not a session file");
+            head = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+            head.order(ByteOrder.LITTLE_ENDIAN);
+            boolean va = validHeader(0), vb = validHeader(HEADER_COPY);
+            if (!va && !vb) {
+                boolean magic = head.getInt(HEAD_MAGIC) == MAGIC || head.getInt(HEADER_COPY + HEAD_MAGIC) == MAGIC;
+                throw new IOException(file + (magic ? " is of an unsupported version or damaged"
+                                                    : " is not a session file"));
+            }
+            int c = va && vb ? (head.getInt(HEAD_SEQ) - head.getInt(HEADER_COPY + HEAD_SEQ) >= 0 ? 0 : HEADER_COPY)
+                             : va ? 0 : HEADER_COPY;
+            capacity = head.getInt(c + CAPACITY);
+            used = head.getInt(c + USED);
+            table = head.getLong(c + TABLE);
+            headCopy = c;
+            headSeq = head.getInt(c + HEAD_SEQ);
+            //a crash while resizing can leave part of a new table after the end of this one
+            if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY || table < HEADER
+                || channel.size() < table + (long) capacity * RECORD)
+                throw new IOException(file + " is damaged");
+            map = channel.map(FileChannel.MapMode.READ_WRITE, table, (long) capacity * RECORD);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        size = -1;
+    }
+
+    //Creates an empty session file under a temporary name and renames it into place
+    private void create() throws IOException {
+        Path tmp = tempFile();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            writeHeaderCopy(header, 0, INITIAL_CAPACITY, 0, HEADER, 1);
+            ch.write(header, 0);
+            //extend the file with zeros, which are never valid copies
+            ch.write(ByteBuffer.allocate(1), HEADER + (long) INITIAL_CAPACITY * RECORD - 1);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    //Flushes the directory of the file so a rename in it survives a crash, on platforms that can open directories
+    private void syncDirectory() {
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            //Windows cannot open a directory as a file, and its renames are already durable
+        }
+    }
+
+    //Moves the live sessions into a table twice the size written after the current table, then points the header
+    //to it. The file is only ever extended, so the mapping of the current table stays valid until it is dropped.
+    private void resize() throws IOException {
+        if (capacity >= MAX_CAPACITY)
+            throw new IllegalStateException("Session table is full");
+        int cap = capacity * 2;
+        long start = table + (long) capacity * RECORD;
+        //throw away what a crash part way through an earlier resize left, so the new table starts out as zeros
+        if (channel.size() > start)
+            channel.truncate(start);
+        channel.write(ByteBuffer.allocate(1), start + (long) cap * RECORD - 1);
+        MappedByteBuffer dst = channel.map(FileChannel.MapMode.READ_WRITE, start, (long) cap * RECORD);
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        boolean[] taken = new boolean[cap];
+        int count = 0;
+        for (int i = 0; i < capacity; i++) {
+            int c = current(i);
+            if (c < 0 || (map.getInt(c + FLAGS) & REMOVED) != 0)
+                continue;
+            Session s = read(c);
+            int j = spread(s.id()) & (cap - 1);
+            while (taken[j]) {
+                j = (j + 1) & (cap - 1);
+            }
+            taken[j] = true;
+            writeCopy(dst, j * RECORD, s, 1, 0);
+            count++;
+        }
+        dst.force();
+        channel.force(true); //the new length of the file
+        map = dst;
+        capacity = cap;
+        used = count;
+        table = start;
+        writeHeader();
+        size = -1;
+    }
+
+    //The file a resized table is written to before it replaces the store
+    private Path tempFile() {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    //Mixes the bits of an id to pick its place in the table
+    private static int spread(long id) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        return (int) id;
+    }
+}
@@ -0,0 +1,102 @@
+package ui;
+
+import model.Ring;
+import model.RingCalculator;
+import model.StrongholdSet;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Calculates the predictions of a RingCalculator off the event dispatch thread and adds them to a table model a
+ * batch at a time, so the GUI stays responsive however long the calculation takes. Progress goes from 0 to 100 as
+ * the predictions are calculated and then handed to the table.
+ * <p>
+ * The worker can be cancelled at any point, such as when the user changes the coordinates or starts another
+ * calculation. Once cancelled it stops working and any batches it already published are ignored, so a stale
+ * calculation never shows up in the table.
+ */
+public class PredictionWorker extends SwingWorker<StrongholdSet, Long> {
+    /**
+     * Number of predictions published to the table at a time
+     */
+    static final int BATCH = 8;
+    /**
+     * The calculator to get the predictions from
+     */
+    private final RingCalculator calc;
+    /**
+     * The model the predictions are added to
+     */
+    private final StrongholdTableModel model;
+    /**
+     * Run on the event dispatch thread after each batch is added to the table
+     */
+    private final Runnable onBatch;
+    /**
+     * Bit mask of the slots to add to the table, the others are left out
+     */
+    private final long keep;
+
+    /**
+     * Creates a worker and empties the table model for the ring of the calculator. Must be created on the event
+     * dispatch thread.
+     *
+     * @param calc The calculator to get the predictions from
+     * @param model The model the predictions are added to
+     * @param onBatch Run on the event dispatch thread after each batch is added to the table
+     */
+    public PredictionWorker(RingCalculator calc, StrongholdTableModel model, Runnable onBatch) {
+        this(calc, model, -1L, onBatch);
+    }
+
+    /**
+     * Creates a worker that only adds some of the slots to the table, such as when restoring a session where some
+     * predictions were already removed. Must be created on the event dispatch thread.
+     *
+     * @param calc The calculator to get the predictions from
+     * @param model The model the predictions are added to
+     * @param keep Bit mask of the slots to add to the table
+     * @param onBatch Run on the event dispatch thread after each batch is added to the table
+     */
+    public PredictionWorker(RingCalculator calc, StrongholdTableModel model, long keep, Runnable onBatch) {
+        this.calc = calc;
+        this.model = model;
+        this.keep = keep;
+        this.onBatch = onBatch;
+        model.setSet(new StrongholdSet(Ring.fromNumber(calc.getRing())));
+    }
+
+    @Override
+    protected StrongholdSet doInBackground() {
+        StrongholdSet set = calc.calcStrongholdSet();
+        setProgress(50);
+        int done = 0;
+        long slots = set.slotMask() & keep;
+        int size = Long.bitCount(slots);
+        Long[] batch = new Long[BATCH];
+        int n = 0;
+        for (long m = slots; m != 0 && !isCancelled(); m &= m - 1) {
+            batch[n++] = set.get(Long.numberOfTrailingZeros(m));
+            done++;
+            if (n == BATCH || (m & (m - 1)) == 0) {
+                publish(Arrays.copyOf(batch, n));
+                n = 0;
+                setProgress(50 + 50 * done / size);
+            }
+        }
+        return set;
+    }
+
+    @Override
+    protected void process(List<Long> entries) {
+        //batches can still be queued when the worker is cancelled
+        if (isCancelled())
+            return;
+        for (long e : entries) {
+            model.add(e);
+        }
+        onBatch.run();
+    }
+}
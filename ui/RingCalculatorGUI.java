@@ -1,20 +1,35 @@
 package ui;
 
-import model.Coords;
+import metrics.Metrics;
 import model.IllegalCoordsException;
+import model.Ring;
 import model.RingCalculator;
+import model.RingClassifier;
+import model.RingTables;
+import model.RoutePlanner;
+import model.StrongholdSet;
+import session.Session;
+import session.SessionStore;
 
 import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.io.Serial;
-import java.util.HashSet;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Swing GUI used to let the user input coordinates of a stronghold and get the approximate coordinates of the
@@ -60,6 +75,10 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
      * Removes a single set of coordinates from the table
      */
     private JButton removeBtn;
+    /**
+     * Shows a route through the remaining Strongholds
+     */
+    private JButton routeBtn;
     /**
      * Label - Found Stronghold coords
      */
@@ -73,9 +92,21 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
      */
     private final JLabel zLbl = new JLabel("Z = ");
     /**
-     * Label - Stronghold ring, is updated to display the ring number
+     * Label - Stronghold ring
      */
     private final JLabel ringLbl = new JLabel("Ring: ");
+    /**
+     * Every ring from most to least likely, the selected one is the ring used for the calculation
+     */
+    private final JComboBox<Ring> ringBox = new JComboBox<>();
+    /**
+     * Chance of the found Stronghold being in each ring, indexed by ring ordinal
+     */
+    private final double[] confidence = new double[Ring.values().length];
+    /**
+     * Set while the ring box is filled or selected by the program, so it is not taken as the user picking a ring
+     */
+    private boolean updatingRings = false;
     /**
      * Label - Number of Strongholds in the ring, is updated to display the number of Strongholds in the ring
      */
@@ -93,13 +124,25 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
      */
     private static final String ERRORTITLE = "That shouldn't happen!";
     /**
-     * List of coordinates to display in the table
+     * Model of the coordinates table, holds the predictions that have not been removed
      */
-    private HashSet<Coords> coords;
+    private final StrongholdTableModel tableModel = new StrongholdTableModel();
     /**
      * Boolean to flag whether to use nether coordinates
      */
     boolean nether = false;
+    /**
+     * Plans the route through the remaining coordinates, null until the user asks for a route
+     */
+    private RoutePlanner planner;
+    /**
+     * The slots the planner was created with, the index of each is its id in the planner
+     */
+    private int[] routeSlots;
+    /**
+     * Most time spent planning or updating a route in nanoseconds, so the GUI never stalls for long
+     */
+    private static final long ROUTE_BUDGET = 50_000_000L;
     /**
      * Instance of RingCalculator to use for calculations
      */
@@ -109,19 +152,73 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
      */
     private JTable coordsTbl;
     /**
-     * Column headers for the coordinates table to separate calculated coordinates by quadrant
+     * Map of the rings and the calculated coordinates, shown in a tab next to the table
      */
-    private final String[] colNames = {"+/+", "+/-", "-/+", "-/-"};
-
+    private RingMapPanel map;
+    /**
+     * Shows the progress of the calculation or route running in the background
+     */
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    /**
+     * Calculates the predictions in the background, null until the first calculation
+     */
+    private PredictionWorker worker;
+    /**
+     * Plans or updates the route in the background, null when no route is being planned or updated
+     */
+    private SwingWorker<RoutePlanner, Void> routeWorker;
+    /**
+     * Whether the route worker is updating the planned route rather than planning a new one
+     */
+    private boolean updatingRoute;
+    /**
+     * Bit mask of the slots removed while the route was being updated, removed from it once the update is done
+     */
+    private long routeRemovals;
+    /**
+     * Whether to show the route once the route worker is done
+     */
+    private boolean showRouteWhenDone;
+    /**
+     * The calculator waiting for the coalescing delay to pass before its predictions are calculated
+     */
+    private RingCalculator pending;
+    /**
+     * Milliseconds to wait after a calculation is asked for, so rapid requests only run the last one
+     */
+    private static final int COALESCE_DELAY = 100;
+    /**
+     * Starts the pending calculation once the coalescing delay passes, restarted by every new request
+     */
+    private final Timer coalesceTimer = new Timer(COALESCE_DELAY, e -> startPending());
+    /**
+     * Bit mask of the slots of the pending calculation to show, all of them unless a session is being restored
+     */
+    private long pendingKeep = -1L;
+    /**
+     * Saves the session so it can be picked up after the program is closed, null if the file could not be opened
+     */
+    private SessionStore sessions;
+    /**
+     * Writes the session to the file in order, off the event dispatch thread since every write is forced to disk
+     */
+    private final ExecutorService sessionSaver = Executors.newSingleThreadExecutor(task -> {
+        Thread t = new Thread(task, "session-saver");
+        t.setDaemon(true);
+        return t;
+    });
+    /**
+     * File the sessions are saved in
+     */
+    private static final Path SESSION_FILE = Path.of(System.getProperty("user.home"), ".stronghold-sessions");
     /**
-     * Whether the user has set a default option for if the Coords are not in a ring
+     * Id of the session of this user
      */
-    private boolean setDefault = false;
-    //The following are all variables related to the dialog boxes used when trying to calculate coords
+    private static final long SESSION_ID = SessionStore.sessionId("gui", System.getProperty("user.name", ""));
     /**
-     * The choice the user selected in the dialog box
+     * Coordinates of the found Stronghold as the user entered them, saved with the session
      */
-    private int choice;
+    private double foundX, foundZ;
 
     /**
      * Starts GUI
@@ -132,6 +229,19 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         setSize(600, 500);
         setLocation(50, 50);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                //the listeners run before the program exits, so the last save is let finish
+                sessionSaver.shutdown();
+                try {
+                    sessionSaver.awaitTermination(2, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        coalesceTimer.setRepeats(false);
         BoxLayout box = new BoxLayout(c, BoxLayout.Y_AXIS);
         c.setLayout(box);
         //construct panels
@@ -140,6 +250,12 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         //add panels to container
         c.add(top);
         c.add(bottom);
+        try {
+            sessions = new SessionStore(SESSION_FILE);
+            restoreSession();
+        } catch (IOException e) { //the program still works, it just cannot remember the session
+            sessions = null;
+        }
         setVisible(true);
     }
 
@@ -163,6 +279,25 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         JPanel zCoord = new JPanel();
         zCoord.add(zLbl);
         zCoord.add(zField);
+        //changing the coordinates cancels a calculation of the old ones
+        DocumentListener inputChanged = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                cancelCalculation();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                cancelCalculation();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                cancelCalculation();
+            }
+        };
+        xField.getDocument().addDocumentListener(inputChanged);
+        zField.getDocument().addDocumentListener(inputChanged);
         //Add label and panels to top row of GridBagLayout
         gbc.gridx = 0;
         gbc.gridy = 0; //sets "coordinates" of GBL (GridBagLayout) to add component to
@@ -185,7 +320,23 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         gbc.gridx = 0;
         gbc.gridy = 2;
         gbc.gridwidth = 1;
-        top.add(ringLbl, gbc);
+        JPanel ring = new JPanel();
+        ring.add(ringLbl);
+        ringBox.setRenderer(new DefaultListCellRenderer() {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                                                          boolean focus) {
+                Object text = value instanceof Ring rg ? RingClassifier.label(rg, confidence[rg.ordinal()]) : value;
+                return super.getListCellRendererComponent(list, text, index, selected, focus);
+            }
+        });
+        ringBox.setEnabled(false);
+        ringBox.addActionListener(this);
+        ring.add(ringBox);
+        top.add(ring, gbc);
         gbc.gridx = 1;
         gbc.gridwidth = 2;
         strongholdsLeftLbl.setAlignmentX(LEFT_ALIGNMENT);
@@ -209,6 +360,9 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         removeBtn = new JButton("Remove Coords");
         removeBtn.addActionListener(this);
         functions.add(removeBtn);
+        routeBtn = new JButton("Route");
+        routeBtn.addActionListener(this);
+        functions.add(routeBtn);
         netherRadBtn = new JRadioButton("Nether Coords");
         netherRadBtn.addActionListener(this);
         functions.add(netherRadBtn);
@@ -217,23 +371,11 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         BoxLayout b = new BoxLayout(bottom, BoxLayout.Y_AXIS);
         bottom.setLayout(b);
         bottom.add(functions);
-        coordsTbl = new JTable(15, 4) {
-            @Serial
-            private static final long serialVersionUID = 1L;
-
-            //Override isCellEditable to make table not editable
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        coordsTbl = new JTable(tableModel); //the model makes the table not editable
         coordsTbl.setPreferredScrollableViewportSize(new Dimension(500, 300));
         coordsTbl.setFillsViewportHeight(true);
         coordsTbl.setDragEnabled(false);
         coordsTbl.setRowSelectionAllowed(false);
-        for (int i = 0; i < colNames.length; i++) {
-            coordsTbl.getColumnModel().getColumn(i).setHeaderValue(colNames[i]);
-        }
         //If a cell is selected and the delete key is pressed remove data from cell
         coordsTbl.addKeyListener(new KeyAdapter() {
             @Override
@@ -251,7 +393,19 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
             }
         });
         JScrollPane scroll = new JScrollPane(coordsTbl);
-        bottom.add(scroll);
+        //the map tab, with a check box to turn the shading on
+        map = new RingMapPanel(tableModel);
+        JPanel mapTab = new JPanel(new BorderLayout());
+        JCheckBox shadingBox = new JCheckBox("Show where each Stronghold could be");
+        shadingBox.addActionListener(e -> map.setShading(shadingBox.isSelected()));
+        mapTab.add(shadingBox, BorderLayout.NORTH);
+        mapTab.add(map, BorderLayout.CENTER);
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Table", scroll);
+        tabs.addTab("Map", mapTab);
+        bottom.add(tabs);
+        progressBar.setStringPainted(true);
+        bottom.add(progressBar);
     }
 
     @Override
@@ -263,133 +417,247 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
             try {
                 x = Double.parseDouble(xField.getText().trim());
                 z = Double.parseDouble(zField.getText().trim());
-                r = new RingCalculator(x, z, false);
-                coords = r.calcStrongholds(nether);
-                fillData(coords);
-                update();
+                foundX = x;
+                foundZ = z;
+                int best = fillRings(x, z);
+                try {
+                    r = new RingCalculator(x, z, false);
+                } catch (IllegalCoordsException ex) { //outside of every ring, use the most likely one
+                    r = new RingCalculator(x, z, true);
+                    r.setRing(best + 1);
+                    if (Metrics.ENABLED)
+                        Metrics.fallback(Metrics.Fallback.GUESS, best + 1);
+                }
+                showPredictions();
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid text input, please enter proper coordinates.",
                                               "Invalid input", JOptionPane.ERROR_MESSAGE);
                 xField.setText("");
                 zField.setText("");
-            } catch (IllegalCoordsException ex) {
-                /**
-                 * Message the box displays
-                 */
-                String message;
-                /**
-                 * Title of the dialog box
-                 */
-                String title;
-                if (!setDefault) {
-                    title = "Invalid Coordinates";
-                    message = """
-                              The provided coordinates were not calculated to be in a Stronghold ring
-                              Would you like to enter the ring manaully, have the program guess the ring, or try again?
-                              """;
-                    String[] options = {"Enter Manually", "Guess", "Try Again"};
-                    choice = JOptionPane.showOptionDialog(this, message, title, JOptionPane.YES_NO_CANCEL_OPTION,
-                                                          JOptionPane.WARNING_MESSAGE, null, options, options[2]);
-
-                    //Possibly set default choice
-                    String[] defaultOptions = {"No", "Yes"};
-                    int defaultChoice = JOptionPane.showOptionDialog(this, "Would you like to set this as your default option?\n"
-                                                                           + "Please note that this cannot be changed unless the program is restarted.",
-                                                                     "Set default option?", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE, null,
-                                                                     defaultOptions, defaultOptions[1]);
-                    if (defaultChoice == 1)
-                        setDefault = true;
-                }
-                //What to do based on choice
-                if (choice == 0) { //Manually enter a ring
-                    Integer[] ringChoices = {1, 2, 3, 4, 5, 6, 7, 8};
-                    title = "Ring Selection";
-                    message = "Please choose a ring that the Stronghold is in.";
-                    Integer i = (Integer) JOptionPane.showInputDialog(this, title, message, JOptionPane.QUESTION_MESSAGE,
-                                                                      null, ringChoices, ringChoices[0]);
-                    try {
-                        r = new RingCalculator(x, z, true);
-                    } catch (IllegalCoordsException ex1) { //Unexpected exception
-                        JOptionPane.showMessageDialog(this, ERRORMSG, ERRORTITLE, JOptionPane.ERROR_MESSAGE);
-                        System.exit(1);
-                    }
-                    r.setRing(i);
-                    coords = r.calcStrongholds(nether);
-                    fillData(coords);
-                    update();
-                } else if (choice == 1) { //Guess the ring
-                    try {
-                        r = new RingCalculator(x, z, true);
-                    } catch (IllegalCoordsException ex1) { //Unexpected exception
-                        JOptionPane.showMessageDialog(this, ERRORMSG, ERRORTITLE, JOptionPane.ERROR_MESSAGE);
-                        System.exit(1);
-                    }
-                    r.guessRing(x, z);
-                    coords = r.calcStrongholds(nether);
-                    fillData(coords);
-                    update();
-                } else { //Try again
-                    xField.setText("");
-                    zField.setText("");
-                }
+            } catch (IllegalCoordsException ex) { //cannot happen when ignoring
+                JOptionPane.showMessageDialog(this, ERRORMSG, ERRORTITLE, JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        //ring box, the user picked a less likely ring
+        else if (e.getSource() == ringBox) {
+            Ring picked = (Ring) ringBox.getSelectedItem();
+            if (updatingRings || picked == null || r == null || picked.getRingNum() == r.getRing())
+                return;
+            try {
+                r = new RingCalculator(foundX, foundZ, true);
+            } catch (IllegalCoordsException ex) { //cannot happen when ignoring
+                return;
             }
+            r.setRing(picked.getRingNum());
+            if (Metrics.ENABLED)
+                Metrics.fallback(Metrics.Fallback.MANUAL, picked.getRingNum());
+            showPredictions();
         }
         //reset button
         else if (e.getSource() == resetBtn) {
             xField.setText("");
             zField.setText("");
             r = null;
-            //scuffed way to clear the table but maintain number of rows
-            DefaultTableModel model = (DefaultTableModel) coordsTbl.getModel();
-            model.setNumRows(0);
-            model.setNumRows(15);
+            updatingRings = true;
+            ringBox.removeAllItems();
+            ringBox.setEnabled(false);
+            updatingRings = false;
+            cancelCalculation();
+            cancelRoute();
+            tableModel.setSet(null);
+            map.setFound(Double.NaN, Double.NaN, null);
+            progressBar.setValue(0);
             update();
+            saveSession();
         }
         //nether radio button
         else if (e.getSource() == netherRadBtn) {
             nether = netherRadBtn.isSelected();
-            if (coords != null && r != null) {
-                if (nether) {
-                    for (Coords c : coords) {
-                        c.convertNether();
-                    }
-                } else {
-                    for (Coords c : coords) {
-                        c.convertOverworld();
-                    }
-                }
-                fillData(coords);
-            }
+            tableModel.setNether(nether);
+            saveSession();
+        }
+        //route button
+        else if (e.getSource() == routeBtn) {
+            showRoute();
         }
         //remove button
         else if (e.getSource() == removeBtn) {
             int row = coordsTbl.getSelectedRow();
             int col = coordsTbl.getSelectedColumn();
-            if (row != -1 && col != -1 && null != coordsTbl.getValueAt(row, col))
+            if (row != -1 && col != -1)
                 remove(row, col);
             coordsTbl.clearSelection();
         }
     }
 
     /**
-     * Fills the coordinates table with the data in the given set
-     *
-     * @param set The set of values to fill the table with
+     * Shows the predictions of the current RingCalculator in the table, replacing any that were shown
+     */
+    private void showPredictions() {
+        cancelRoute();
+        pending = r;
+        pendingKeep = -1L;
+        coalesceTimer.restart();
+    }
+
+    /**
+     * Starts calculating the pending predictions in the background, cancelling any calculation already running
+     */
+    private void startPending() {
+        if (pending == null)
+            return;
+        if (worker != null)
+            worker.cancel(true);
+        PredictionWorker w = new PredictionWorker(pending, tableModel, pendingKeep, this::update);
+        worker = w;
+        map.setFound(pending.getX(), pending.getZ(), Ring.fromNumber(pending.getRing()));
+        pending = null;
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()))
+                progressBar.setValue((Integer) e.getNewValue());
+            //saved once every prediction is in the table, a cancelled calculation has already been replaced
+            else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE
+                     && !w.isCancelled())
+                saveSession();
+        });
+        progressBar.setValue(0);
+        worker.execute();
+        update();
+    }
+
+    /**
+     * Cancels the pending and running calculation, the predictions already in the table are kept
+     */
+    private void cancelCalculation() {
+        coalesceTimer.stop();
+        pending = null;
+        if (worker != null && !worker.isDone())
+            worker.cancel(true);
+    }
+
+    /**
+     * Cancels planning a route and throws away the planned one, for when the predictions change
+     */
+    private void cancelRoute() {
+        if (routeWorker != null) {
+            routeWorker.cancel(true);
+            routeWorker = null;
+            progressBar.setIndeterminate(false);
+        }
+        planner = null;
+        routeRemovals = 0;
+        showRouteWhenDone = false;
+    }
+
+    /**
+     * Shows the order to visit the remaining coordinates in, starting from the found Stronghold. The route is
+     * planned in nether coordinates the first time and then kept up to date as coordinates are removed.
      */
-    private void fillData(HashSet<Coords> set) {
-        if (set == null)
+    private void showRoute() {
+        StrongholdSet set = tableModel.getSet();
+        //wait for the predictions to finish so the route covers all of them
+        if (r == null || set == null || set.isEmpty() || pending != null || !worker.isDone())
             return;
-        int c1 = 0, c2 = 0, c3 = 0, c4 = 0; //counters to keep up with number of entries in each column
-        for (Coords c : set) {
-            switch (c.getQuadrant()) {
-                case POSPOS -> coordsTbl.setValueAt(c.toString(), c1++, 0);
-                case POSNEG -> coordsTbl.setValueAt(c.toString(), c2++, 1);
-                case NEGPOS -> coordsTbl.setValueAt(c.toString(), c3++, 2);
-                case NEGNEG -> coordsTbl.setValueAt(c.toString(), c4++, 3);
-                default -> JOptionPane.showMessageDialog(this, ERRORMSG, ERRORTITLE,
-                                                         JOptionPane.ERROR_MESSAGE);
+        if (planner == null) {
+            if (routeWorker != null) { //already planning or updating, the route is shown once it is done
+                showRouteWhenDone = true;
+                return;
+            }
+            routeSlots = new int[set.size()];
+            double[] xs = new double[routeSlots.length];
+            double[] zs = new double[routeSlots.length];
+            int i = 0;
+            for (long m = set.slotMask(); m != 0; m &= m - 1, i++) {
+                routeSlots[i] = Long.numberOfTrailingZeros(m);
+                xs[i] = StrongholdSet.blockX(set.get(routeSlots[i]), true);
+                zs[i] = StrongholdSet.blockZ(set.get(routeSlots[i]), true);
             }
+            double startX = r.getX() / 8, startZ = r.getZ() / 8;
+            showRouteWhenDone = true;
+            runRoute(() -> {
+                RoutePlanner p = new RoutePlanner(startX, startZ, xs, zs);
+                p.plan(Runtime.getRuntime().availableProcessors(), ROUTE_BUDGET);
+                return p;
+            }, false);
+            return;
+        }
+        StringBuilder sb = new StringBuilder("Visit in this order:\n");
+        int n = 1;
+        for (int id : planner.getRoute()) {
+            long e = set.get(routeSlots[id]);
+            sb.append(n++).append(". (").append((int) StrongholdSet.blockX(e, nether)).append(", ")
+              .append((int) StrongholdSet.blockZ(e, nether)).append(")\n");
         }
+        sb.append("Nether distance: ").append((int) planner.getLength()).append(" blocks");
+        JOptionPane.showMessageDialog(this, sb.toString(), "Route", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Plans or updates the route in the background. The planner is only touched by the worker until it is done, then
+     * any slots removed in the meantime are removed from it and the route is shown if it was asked for.
+     *
+     * @param work Makes or updates the planner
+     * @param update Whether the work updates the planned route rather than planning a new one
+     */
+    private void runRoute(Supplier<RoutePlanner> work, boolean update) {
+        updatingRoute = update;
+        routeWorker = new SwingWorker<>() {
+            @Override
+            protected RoutePlanner doInBackground() {
+                return work.get();
+            }
+
+            @Override
+            protected void done() {
+                //a cancelled worker has already been replaced
+                if (isCancelled() || routeWorker != this)
+                    return;
+                routeWorker = null;
+                progressBar.setIndeterminate(false);
+                try {
+                    planner = get();
+                } catch (Exception e) {
+                    routeRemovals = 0;
+                    showRouteWhenDone = false;
+                    JOptionPane.showMessageDialog(RingCalculatorGUI.this, ERRORMSG, ERRORTITLE,
+                                                  JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (routeRemovals != 0) {
+                    long slots = routeRemovals;
+                    routeRemovals = 0;
+                    updateRoute(slots);
+                } else if (showRouteWhenDone) {
+                    showRouteWhenDone = false;
+                    showRoute();
+                }
+            }
+        };
+        progressBar.setIndeterminate(true);
+        routeWorker.execute();
+    }
+
+    /**
+     * Removes slots from the planned route in the background, improving the route around the gaps
+     *
+     * @param slots Bit mask of the slots to remove
+     */
+    private void updateRoute(long slots) {
+        RoutePlanner p = planner;
+        planner = null;
+        int[] ids = new int[Long.bitCount(slots)];
+        int n = 0;
+        for (int id = 0; id < routeSlots.length; id++) {
+            if ((slots & 1L << routeSlots[id]) != 0)
+                ids[n++] = id;
+        }
+        int count = n;
+        runRoute(() -> {
+            for (int i = 0; i < count; i++) {
+                p.remove(ids[i], ROUTE_BUDGET);
+            }
+            return p;
+        }, true);
     }
 
     /**
@@ -400,14 +668,103 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
         if (r == null) {
             numStrongholdsLbl.setText("Num Strongholds: ");
             strongholdsLeftLbl.setText("Strongholds Left: ");
-            ringLbl.setText("Ring: ");
         } else {
             numStrongholdsLbl.setText("Num Strongholds: " + r.getNumStrongholds());
-            strongholdsLeftLbl.setText("Strongholds Left: " + coords.size());
-            ringLbl.setText("Ring: " + r.getRing());
+            StrongholdSet set = tableModel.getSet();
+            strongholdsLeftLbl.setText("Strongholds Left: " + (set == null ? 0 : set.size()));
+            updatingRings = true;
+            ringBox.setSelectedItem(Ring.fromNumber(r.getRing()));
+            updatingRings = false;
         }
     }
 
+    /**
+     * Saves the found Stronghold, ring, dimension and remaining coordinates, or forgets the session if there is no
+     * calculation. The session is read on the event dispatch thread and written by the session saver, and each save
+     * only rewrites the record of this session.
+     */
+    private void saveSession() {
+        if (sessions == null)
+            return;
+        SessionStore store = sessions;
+        StrongholdSet set = tableModel.getSet();
+        Session s = r == null || set == null ? null : new Session(SESSION_ID, foundX, foundZ, r.getRing(), nether,
+                                                                    set.slotMask(), System.currentTimeMillis());
+        sessionSaver.execute(() -> {
+            try {
+                if (s == null)
+                    store.remove(SESSION_ID);
+                else
+                    store.put(s);
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    //saves already queued can fail too, the warning is only shown once
+                    if (sessions != store)
+                        return;
+                    sessions = null;
+                    JOptionPane.showMessageDialog(this,
+                                                  "Could not save the session, it will not be restored next time.",
+                                                  "Session not saved", JOptionPane.WARNING_MESSAGE);
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows the session saved the last time the program was closed, if there is one
+     */
+    private void restoreSession() {
+        Session s = sessions.get(SESSION_ID);
+        if (s == null)
+            return;
+        //a ring config with fewer rings was loaded since the session was saved, its ring no longer exists
+        if (s.ring() < 1 || s.ring() > RingTables.current().getRings()) {
+            sessions.remove(SESSION_ID);
+            return;
+        }
+        try {
+            r = new RingCalculator(s.x(), s.z(), true);
+        } catch (IllegalCoordsException e) { //cannot happen when ignoring
+            return;
+        }
+        fillRings(s.x(), s.z());
+        r.setRing(s.ring());
+        foundX = s.x();
+        foundZ = s.z();
+        xField.setText(format(s.x()));
+        zField.setText(format(s.z()));
+        nether = s.nether();
+        netherRadBtn.setSelected(nether);
+        tableModel.setNether(nether);
+        pending = r;
+        pendingKeep = s.remaining();
+        startPending();
+    }
+
+    /**
+     * Lists every ring in the ring box from most to least likely for the found Stronghold
+     *
+     * @param x The x coordinate of the found Stronghold
+     * @param z The z coordinate of the found Stronghold
+     * @return The ordinal of the most likely ring
+     */
+    private int fillRings(double x, double z) {
+        int best = RingClassifier.classify(x, z, confidence);
+        updatingRings = true;
+        ringBox.removeAllItems();
+        for (Ring ring : RingClassifier.rank(confidence, best)) {
+            ringBox.addItem(ring);
+        }
+        ringBox.setEnabled(true);
+        updatingRings = false;
+        return best;
+    }
+
+    //Formats a coordinate without a decimal point when it is a whole number, the way it is usually entered
+    private static String format(double d) {
+        return d == Math.rint(d) && Math.abs(d) < 1e15 ? String.valueOf((long) d) : String.valueOf(d);
+    }
+
     /**
      * Removes the data from the cell in the table with the given row and column
      *
@@ -416,26 +773,18 @@ public class RingCalculatorGUI extends JFrame implements ActionListener {
      */
     private void remove(int row, int col) {
         try {
-            if (coordsTbl.getValueAt(row, col) != null) {
-                String s = (String) coordsTbl.getValueAt(row, col);
-                for (Coords c : coords) {
-                    if (s.equals(c.toString())) {
-                        coords.remove(c);
-                        coordsTbl.setValueAt(null, row, col);
-
-                        //clear data then refill - will work on better solution in future
-                        DefaultTableModel model = (DefaultTableModel) coordsTbl.getModel();
-                        model.setNumRows(0);
-                        model.setNumRows(15);
-
-                        if (coords.size() > 0) {
-                            fillData(coords);
-                        }
-                        break;
-                    }
-                }
+            int slot = tableModel.getSlotAt(row, col);
+            if (slot != -1) {
+                if (routeWorker != null && !updatingRoute) //the route being planned still has the slot in it
+                    cancelRoute();
+                if (routeWorker != null) //the route is being updated, the slot is removed from it after
+                    routeRemovals |= 1L << slot;
+                else if (planner != null)
+                    updateRoute(1L << slot);
+                tableModel.remove(slot);
             }
             update();
+            saveSession();
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Could not remove Coordinates", "Don't do that",
                                           JOptionPane.ERROR_MESSAGE);
@@ -0,0 +1,534 @@
+package ui;
+
+import model.ProbabilityHeatmap;
+import model.Ring;
+import model.RingTables;
+import model.StrongholdSet;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Serial;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map of the stronghold rings that can be dragged to pan and scrolled to zoom from the first ring out to the
+ * eighth. The map draws the band of every ring, the found Stronghold, the remaining predictions of a
+ * {@link StrongholdTableModel} and, if turned on, shading of where each remaining Stronghold could really be.
+ * <p>
+ * The bands and shading never change while panning or zooming, so they are drawn once into 256 pixel tiles that
+ * are kept in an LRU cache. Tiles are drawn at a level of detail of 1, 2, 4 ... 128 blocks per pixel, and a zoom
+ * between two levels scales the tiles of the finer level down, so zooming never redraws a tile. A tile that is not
+ * cached is drawn from its cached parent at the next coarser level until it is rendered, and only a few milliseconds
+ * of tiles are rendered each frame so panning into new areas does not drop frames. The markers are few and drawn
+ * over the tiles every frame.
+ * <p>
+ * The map listens to the table model. When a prediction is removed only the tiles its shading covered are thrown
+ * away, and when predictions are added only the tiles their shading covers are.
+ */
+public class RingMapPanel extends JPanel {
+    /**
+     * Serial Version ID
+     */
+    @Serial
+    private static final long serialVersionUID = 1L;
+    /**
+     * Width and height of a tile in pixels
+     */
+    private static final int TILE = 256;
+    /**
+     * Coarsest level of detail, tiles at level L are drawn at 2^L blocks per pixel
+     */
+    private static final int MAX_LEVEL = 7;
+    /**
+     * Most tiles kept in the cache, about 25 MB of images
+     */
+    private static final int MAX_TILES = 96;
+    /**
+     * Most time spent rendering tiles in one frame in nanoseconds, the rest are rendered in later frames
+     */
+    private static final long RENDER_BUDGET = 8_000_000L;
+    /**
+     * Closest and farthest zoom in blocks per pixel
+     */
+    private static final double MIN_ZOOM = 0.5, MAX_ZOOM = 1 << MAX_LEVEL;
+    /**
+     * Standard deviation in degrees of the angle of a prediction used for the shading
+     */
+    private static final double SHADING_ERROR = 2;
+    /**
+     * Most cells of the probability grid of a prediction, which bounds the memory of the shading for the outer rings
+     */
+    private static final int SHADING_CELLS = 1 << 12;
+    /**
+     * Colors of the map, the gaps between rings, the rings, the ring of the found Stronghold and full shading
+     */
+    private static final int BACKGROUND = 0x1e2128, BAND = 0x34404f, CURRENT_BAND = 0x4a6480, SHADE = 0xffa040;
+    /**
+     * Model holding the predictions to draw
+     */
+    private final StrongholdTableModel model;
+    /**
+     * Rendered tiles by level and tile coordinates, least recently drawn first
+     */
+    private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(MAX_TILES * 2, 0.75f, true) {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    /**
+     * The ring tables the cached tiles were drawn with
+     */
+    private RingTables tables;
+    /**
+     * Squared distance from the origin at which each ring of the tables starts and ends, indexed by ring ordinal
+     */
+    private double[] inner2, outer2;
+    /**
+     * Block coordinates at the center of the panel
+     */
+    private double centerX, centerZ;
+    /**
+     * Blocks per pixel
+     */
+    private double zoom = 64;
+    /**
+     * The set the drawn predictions came from
+     */
+    private StrongholdSet shownSet;
+    /**
+     * Bit mask of the slots of the set that the shading was last brought in line with
+     */
+    private long shownMask;
+    /**
+     * Coordinates of the found Stronghold at its chunk center, NaN if there is none
+     */
+    private double foundX = Double.NaN, foundZ = Double.NaN;
+    /**
+     * Ring of the found Stronghold, drawn in a brighter color, null if there is none
+     */
+    private Ring ring;
+    /**
+     * Whether to draw the shading
+     */
+    private boolean shading;
+    /**
+     * Probability grid of each remaining prediction by slot, null for slots without one or when shading is off
+     */
+    private ProbabilityHeatmap[] heat = new ProbabilityHeatmap[0];
+    /**
+     * Largest probability of each grid, so the most likely cell of every prediction is fully shaded
+     */
+    private float[] heatMax = new float[0];
+    /**
+     * Where the mouse was last pressed or dragged to, null when not dragging
+     */
+    private Point drag;
+    /**
+     * Block coordinates under the mouse, NaN when the mouse is not over the map
+     */
+    private double mouseX = Double.NaN, mouseZ = Double.NaN;
+
+    /**
+     * Creates a map of the predictions of a table model
+     *
+     * @param model The model holding the predictions
+     */
+    public RingMapPanel(StrongholdTableModel model) {
+        this.model = model;
+        setPreferredSize(new Dimension(500, 300));
+        setBackground(new Color(BACKGROUND));
+        setOpaque(true);
+        model.addTableModelListener(this::modelChanged);
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                drag = e.getPoint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                drag = null;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (drag == null)
+                    return;
+                centerX -= (e.getX() - drag.x) * zoom;
+                centerZ -= (e.getY() - drag.y) * zoom;
+                drag = e.getPoint();
+                mouseMoved(e);
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                mouseX = blockX(e.getX());
+                mouseZ = blockZ(e.getY());
+                repaint();
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                mouseX = mouseZ = Double.NaN;
+                repaint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                //zoom around the point under the mouse so it stays under the mouse
+                double bx = blockX(e.getX()), bz = blockZ(e.getY());
+                zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * Math.pow(1.15, e.getPreciseWheelRotation())));
+                centerX = bx - (e.getX() - getWidth() / 2.0) * zoom;
+                centerZ = bz - (e.getY() - getHeight() / 2.0) * zoom;
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Sets the found Stronghold and zooms to fit its ring, or clears the map
+     *
+     * @param x The x coordinate of the found Stronghold at its chunk center, NaN for none
+     * @param z The z coordinate of the found Stronghold at its chunk center, NaN for none
+     * @param ring The ring of the found Stronghold, null for none
+     */
+    public void setFound(double x, double z, Ring ring) {
+        foundX = x;
+        foundZ = z;
+        if (ring != this.ring) { //the bright band moved
+            this.ring = ring;
+            tiles.clear();
+        }
+        if (ring != null) {
+            centerX = 0;
+            centerZ = 0;
+            int size = Math.max(1, Math.min(getWidth(), getHeight()));
+            zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, 2.2 * ring.getMax() / size));
+        }
+        repaint();
+    }
+
+    /**
+     * Turns the shading of where each remaining Stronghold could be on or off
+     *
+     * @param shading Whether to draw the shading
+     */
+    public void setShading(boolean shading) {
+        if (this.shading == shading)
+            return;
+        this.shading = shading;
+        heat = new ProbabilityHeatmap[0];
+        heatMax = new float[0];
+        shownSet = null;
+        shownMask = 0;
+        tiles.clear();
+        sync();
+        repaint();
+    }
+
+    /**
+     * Whether the shading is drawn
+     */
+    public boolean isShading() {
+        return shading;
+    }
+
+    //Keeps the map in step with the table model
+    private void modelChanged(TableModelEvent e) {
+        sync();
+        repaint();
+    }
+
+    /**
+     * Brings the drawn predictions in line with the model, throwing away only the tiles whose shading changed
+     */
+    private void sync() {
+        StrongholdSet set = model.getSet();
+        long mask = set == null ? 0 : set.slotMask();
+        if (set != shownSet) { //a new calculation, nothing drawn is kept
+            if (shading && heat.length > 0)
+                tiles.clear();
+            int slots = set == null ? 0 : StrongholdSet.MAX_SLOTS;
+            heat = new ProbabilityHeatmap[slots];
+            heatMax = new float[slots];
+            shownSet = set;
+            shownMask = 0;
+        }
+        long changed = mask ^ shownMask;
+        shownMask = mask;
+        if (!shading || changed == 0 || Double.isNaN(foundX))
+            return;
+        //one read of the tables for every heatmap, a ring the config no longer has is not shaded
+        RingTables t = RingTables.current();
+        boolean shade = t.getNumStrongholds(set.getRing()) > 0;
+        for (long m = changed; m != 0; m &= m - 1) {
+            int slot = Long.numberOfTrailingZeros(m);
+            if ((mask & 1L << slot) != 0 && shade) {
+                ProbabilityHeatmap h = ProbabilityHeatmap.forSlot(t, set.getRing(), foundX, foundZ, slot,
+                                                                  SHADING_ERROR, SHADING_CELLS);
+                float max = 0;
+                for (float p : h.getGrid()) {
+                    max = Math.max(max, p);
+                }
+                heat[slot] = h;
+                heatMax[slot] = max;
+            }
+            invalidate(heat[slot]);
+            if ((mask & 1L << slot) == 0)
+                heat[slot] = null;
+        }
+    }
+
+    /**
+     * Throws away every cached tile that overlaps the shading of a prediction
+     *
+     * @param h The probability grid of the prediction
+     */
+    private void invalidate(ProbabilityHeatmap h) {
+        if (h == null)
+            return;
+        long minX = h.getChunkX(0) * 16L, maxX = h.getChunkX(h.getWidth()) * 16L;
+        long minZ = h.getChunkZ(0) * 16L, maxZ = h.getChunkZ(h.getHeight()) * 16L;
+        for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext(); ) {
+            long key = it.next();
+            long span = (long) TILE << level(key);
+            long tx = tileX(key) * span, tz = tileZ(key) * span;
+            if (tx < maxX && tx + span > minX && tz < maxZ && tz + span > minZ)
+                it.remove();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        int w = getWidth(), h = getHeight();
+        if (tables != RingTables.current())
+            useTables(RingTables.current());
+        int level = Math.max(0, Math.min(MAX_LEVEL, (int) Math.floor(Math.log(zoom) / Math.log(2))));
+        long span = (long) TILE << level;
+        long firstX = Math.floorDiv((long) Math.floor(blockX(0)), span);
+        long lastX = Math.floorDiv((long) Math.floor(blockX(w)), span);
+        long firstZ = Math.floorDiv((long) Math.floor(blockZ(0)), span);
+        long lastZ = Math.floorDiv((long) Math.floor(blockZ(h)), span);
+        long deadline = System.nanoTime() + RENDER_BUDGET;
+        boolean missing = false;
+        for (long tz = firstZ; tz <= lastZ; tz++) {
+            for (long tx = firstX; tx <= lastX; tx++) {
+                //round both edges the same way so neighbouring tiles meet without a seam
+                int x0 = (int) Math.round(screenX(tx * span)), x1 = (int) Math.round(screenX((tx + 1) * span));
+                int z0 = (int) Math.round(screenZ(tz * span)), z1 = (int) Math.round(screenZ((tz + 1) * span));
+                BufferedImage img = tiles.get(key(level, tx, tz));
+                if (img == null && System.nanoTime() < deadline) {
+                    img = render(level, tx, tz);
+                    tiles.put(key(level, tx, tz), img);
+                }
+                if (img != null) {
+                    g2.drawImage(img, x0, z0, x1 - x0, z1 - z0, null);
+                    continue;
+                }
+                missing = true;
+                //stand in with the quarter of the coarser tile that covers this one, if it is cached
+                BufferedImage parent = level < MAX_LEVEL ? tiles.get(key(level + 1, tx >> 1, tz >> 1)) : null;
+                if (parent != null) {
+                    int sx = (int) (tx & 1) * TILE / 2, sz = (int) (tz & 1) * TILE / 2;
+                    g2.drawImage(parent, x0, z0, x1, z1, sx, sz, sx + TILE / 2, sz + TILE / 2, null);
+                }
+            }
+        }
+        paintMarkers(g2);
+        if (missing) //render the rest next frame
+            repaint();
+    }
+
+    /**
+     * Draws the origin, the found Stronghold, the remaining predictions and the coordinates under the mouse
+     *
+     * @param g2 The graphics of the panel
+     */
+    private void paintMarkers(Graphics2D g2) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(new Color(0x808890));
+        int ox = (int) Math.round(screenX(0)), oz = (int) Math.round(screenZ(0));
+        g2.drawLine(ox - 5, oz, ox + 5, oz);
+        g2.drawLine(ox, oz - 5, ox, oz + 5);
+        StrongholdSet set = model.getSet();
+        if (set != null) {
+            g2.setColor(new Color(0x7fd0ff));
+            boolean labels = zoom <= 16;
+            for (long m = set.slotMask(); m != 0; m &= m - 1) {
+                int slot = Long.numberOfTrailingZeros(m);
+                long e = set.get(slot);
+                int px = (int) Math.round(screenX(StrongholdSet.blockX(e, false)));
+                int pz = (int) Math.round(screenZ(StrongholdSet.blockZ(e, false)));
+                g2.fillOval(px - 4, pz - 4, 8, 8);
+                if (labels)
+                    g2.drawString(String.valueOf(slot), px + 6, pz - 6);
+            }
+        }
+        if (!Double.isNaN(foundX)) {
+            int fx = (int) Math.round(screenX(foundX)), fz = (int) Math.round(screenZ(foundZ));
+            g2.setColor(new Color(0xff5050));
+            g2.fillPolygon(new int[]{fx, fx + 6, fx, fx - 6}, new int[]{fz - 6, fz, fz + 6, fz}, 4);
+        }
+        if (!Double.isNaN(mouseX)) {
+            g2.setColor(Color.WHITE);
+            g2.drawString("X = " + (long) Math.floor(mouseX) + "  Z = " + (long) Math.floor(mouseZ), 6,
+                          getHeight() - 6);
+        }
+    }
+
+    //Draws the bands of other ring tables from now on, throwing away the tiles drawn with the old ones
+    private void useTables(RingTables t) {
+        Ring[] rings = t.rings();
+        inner2 = new double[rings.length];
+        outer2 = new double[rings.length];
+        for (int i = 0; i < rings.length; i++) {
+            inner2[i] = (double) t.getMin(rings[i]) * t.getMin(rings[i]);
+            outer2[i] = (double) t.getMax(rings[i]) * t.getMax(rings[i]);
+        }
+        tables = t;
+        tiles.clear();
+    }
+
+    /**
+     * Renders a tile of the ring bands and shading straight into the pixels of an image
+     *
+     * @param level The level of detail, the tile is drawn at 2^level blocks per pixel
+     * @param tx The x index of the tile at its level
+     * @param tz The z index of the tile at its level
+     * @return The tile
+     */
+    private BufferedImage render(int level, long tx, long tz) {
+        BufferedImage img = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+        int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        double scale = 1 << level;
+        double baseX = tx * TILE, baseZ = tz * TILE;
+        int current = ring == null ? -1 : ring.ordinal();
+        for (int j = 0; j < TILE; j++) {
+            double bz = (baseZ + j + 0.5) * scale;
+            for (int i = 0; i < TILE; i++) {
+                double bx = (baseX + i + 0.5) * scale;
+                double d2 = bx * bx + bz * bz;
+                int color = BACKGROUND;
+                for (int r = 0; r < inner2.length; r++) {
+                    if (d2 < inner2[r])
+                        break;
+                    if (d2 < outer2[r]) {
+                        color = r == current ? CURRENT_BAND : BAND;
+                        break;
+                    }
+                }
+                px[j * TILE + i] = color;
+            }
+        }
+        if (shading)
+            shade(px, scale, baseX * scale, baseZ * scale);
+        return img;
+    }
+
+    /**
+     * Blends the shading of every prediction that overlaps a tile into its pixels
+     *
+     * @param px The pixels of the tile
+     * @param scale Blocks per pixel
+     * @param minX The x block coordinate of the corner of the tile
+     * @param minZ The z block coordinate of the corner of the tile
+     */
+    private void shade(int[] px, double scale, double minX, double minZ) {
+        double maxX = minX + TILE * scale, maxZ = minZ + TILE * scale;
+        for (int slot = 0; slot < heat.length; slot++) {
+            ProbabilityHeatmap h = heat[slot];
+            if (h == null || heatMax[slot] <= 0)
+                continue;
+            int cell = h.getCellChunks();
+            double hMinX = h.getChunkX(0) * 16.0, hMinZ = h.getChunkZ(0) * 16.0;
+            double hMaxX = h.getChunkX(h.getWidth()) * 16.0, hMaxZ = h.getChunkZ(h.getHeight()) * 16.0;
+            if (hMinX >= maxX || hMaxX <= minX || hMinZ >= maxZ || hMaxZ <= minZ)
+                continue;
+            //only the pixels inside the grid of the prediction
+            int i0 = Math.max(0, (int) Math.floor((hMinX - minX) / scale));
+            int i1 = Math.min(TILE, (int) Math.ceil((hMaxX - minX) / scale));
+            int j0 = Math.max(0, (int) Math.floor((hMinZ - minZ) / scale));
+            int j1 = Math.min(TILE, (int) Math.ceil((hMaxZ - minZ) / scale));
+            float[] grid = h.getGrid();
+            float inv = 1 / heatMax[slot];
+            for (int j = j0; j < j1; j++) {
+                int row = (int) Math.floor((minZ + (j + 0.5) * scale - hMinZ) / 16 / cell);
+                if (row < 0 || row >= h.getHeight())
+                    continue;
+                for (int i = i0; i < i1; i++) {
+                    int col = (int) Math.floor((minX + (i + 0.5) * scale - hMinX) / 16 / cell);
+                    if (col < 0 || col >= h.getWidth())
+                        continue;
+                    float a = grid[row * h.getWidth() + col] * inv;
+                    if (a > 0)
+                        px[j * TILE + i] = blend(px[j * TILE + i], SHADE, Math.min(a, 1) * 0.8f);
+                }
+            }
+        }
+    }
+
+    //Mixes two RGB colors, a of the way from the first to the second
+    private static int blend(int from, int to, float a) {
+        int r = (int) (((from >> 16) & 0xff) + ((((to >> 16) & 0xff) - ((from >> 16) & 0xff)) * a));
+        int g = (int) (((from >> 8) & 0xff) + ((((to >> 8) & 0xff) - ((from >> 8) & 0xff)) * a));
+        int b = (int) ((from & 0xff) + (((to & 0xff) - (from & 0xff)) * a));
+        return r << 16 | g << 8 | b;
+    }
+
+    //Pixel of the panel that a block x coordinate is drawn at
+    private double screenX(double bx) {
+        return (bx - centerX) / zoom + getWidth() / 2.0;
+    }
+
+    //Pixel of the panel that a block z coordinate is drawn at
+    private double screenZ(double bz) {
+        return (bz - centerZ) / zoom + getHeight() / 2.0;
+    }
+
+    //Block x coordinate drawn at a pixel of the panel
+    private double blockX(double sx) {
+        return centerX + (sx - getWidth() / 2.0) * zoom;
+    }
+
+    //Block z coordinate drawn at a pixel of the panel
+    private double blockZ(double sz) {
+        return centerZ + (sz - getHeight() / 2.0) * zoom;
+    }
+
+    //Packs a tile into a cache key, 4 bits of level and 30 bits of each tile index
+    private static long key(int level, long tx, long tz) {
+        return (long) level << 60 | (tx & 0x3fffffffL) << 30 | (tz & 0x3fffffffL);
+    }
+
+    //Level of a cache key
+    private static int level(long key) {
+        return (int) (key >>> 60);
+    }
+
+    //Tile x index of a cache key, sign extended from 30 bits
+    private static long tileX(long key) {
+        return key << 4 >> 34;
+    }
+
+    //Tile z index of a cache key, sign extended from 30 bits
+    private static long tileZ(long key) {
+        return key << 34 >> 34;
+    }
+}
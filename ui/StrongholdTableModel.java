@@ -0,0 +1,253 @@
+package ui;
+
+import model.Coords;
+import model.StrongholdSet;
+
+import javax.swing.table.AbstractTableModel;
+import java.io.Serial;
+import java.util.Arrays;
+
+/**
+ * Table model showing the predictions of a StrongholdSet with one column per quadrant. Each column lists the
+ * slots in its quadrant from the top down, and the table has as many rows as the fullest quadrant, so a ring of
+ * any size fits without a fixed number of rows.
+ * <p>
+ * Removing a prediction moves the last prediction of its column into the freed cell instead of shifting the
+ * column up, so a removal is O(1) and only touches two cells. Listeners are told exactly which cells changed,
+ * and that a row was deleted when the fullest column gets shorter, so the table never has to redraw everything.
+ */
+public class StrongholdTableModel extends AbstractTableModel {
+    /**
+     * Serial Version ID
+     */
+    @Serial
+    private static final long serialVersionUID = 1L;
+    /**
+     * Column headers, one per quadrant in the order of the Quadrant enum
+     */
+    private static final String[] COL_NAMES = {"+/+", "+/-", "-/+", "-/-"};
+    /**
+     * The quadrants in column order, kept since values() copies the array every call
+     */
+    private static final Coords.Quadrant[] QUADRANTS = Coords.Quadrant.values();
+    /**
+     * The predictions shown, null when the table is empty
+     */
+    private transient StrongholdSet set;
+    /**
+     * Whether the coordinates are shown as nether coordinates
+     */
+    private boolean nether;
+    /**
+     * Slots shown in each column from the top down, indexed by column then row
+     */
+    private final int[][] cells = new int[COL_NAMES.length][StrongholdSet.MAX_SLOTS];
+    /**
+     * Number of slots in each column
+     */
+    private final int[] counts = new int[COL_NAMES.length];
+    /**
+     * Row of each slot in its column, indexed by slot
+     */
+    private final int[] rowOf = new int[StrongholdSet.MAX_SLOTS];
+    /**
+     * Column of each slot, indexed by slot, -1 for a slot that is not shown
+     */
+    private final int[] colOf = new int[StrongholdSet.MAX_SLOTS];
+    /**
+     * Text shown for each slot in the overworld (index 0) and the nether (index 1), created the first time the cell
+     * is drawn in that dimension. Both are kept, so switching dimensions back and forth creates nothing new.
+     */
+    private final String[][] labels = new String[2][StrongholdSet.MAX_SLOTS];
+    /**
+     * Number of rows, the length of the longest column
+     */
+    private int rows;
+
+    /**
+     * Creates an empty table model
+     */
+    public StrongholdTableModel() {
+        setSet(null);
+    }
+
+    /**
+     * Shows a new set of predictions, replacing the ones shown
+     *
+     * @param set The predictions to show, null to empty the table
+     */
+    public void setSet(StrongholdSet set) {
+        this.set = set;
+        Arrays.fill(counts, 0);
+        Arrays.fill(colOf, -1);
+        for (String[] l : labels) {
+            Arrays.fill(l, null);
+        }
+        if (set != null) {
+            for (Coords.Quadrant q : QUADRANTS) {
+                int col = q.ordinal();
+                for (long m = set.slotMask(q); m != 0; m &= m - 1) {
+                    int slot = Long.numberOfTrailingZeros(m);
+                    rowOf[slot] = counts[col];
+                    colOf[slot] = col;
+                    cells[col][counts[col]++] = slot;
+                }
+            }
+        }
+        rows = longest();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the predictions shown, null when the table is empty
+     */
+    public StrongholdSet getSet() {
+        return set;
+    }
+
+    /**
+     * Sets whether the coordinates are shown as nether coordinates. The predictions are kept as overworld chunks
+     * and converted when a cell is read, so nothing is converted or changed here and switching back gives exactly
+     * the coordinates shown before. Every cell changes, but the layout does not.
+     *
+     * @param nether Whether to show nether coordinates
+     */
+    public void setNether(boolean nether) {
+        if (this.nether == nether)
+            return;
+        this.nether = nether;
+        if (rows > 0)
+            fireTableRowsUpdated(0, rows - 1);
+    }
+
+    /**
+     * Whether the coordinates are shown as nether coordinates
+     */
+    public boolean isNether() {
+        return nether;
+    }
+
+    /**
+     * Gets the slot shown in a cell
+     *
+     * @param row The row of the cell
+     * @param col The column of the cell
+     * @return The slot in the cell, -1 if the cell is empty
+     */
+    public int getSlotAt(int row, int col) {
+        if (col < 0 || col >= counts.length || row < 0 || row >= counts[col])
+            return -1;
+        return cells[col][row];
+    }
+
+    /**
+     * Adds a prediction to the set and the bottom of its quadrant's column
+     *
+     * @param entry The packed entry of the prediction, see {@link StrongholdSet#pack}
+     * @return True if the prediction was added, false if the table is empty or the slot is already shown
+     */
+    public boolean add(long entry) {
+        int slot = StrongholdSet.slot(entry);
+        if (set == null || colOf[slot] != -1)
+            return false;
+        set.add(slot, StrongholdSet.chunkX(entry), StrongholdSet.chunkZ(entry));
+        int col = 0;
+        while ((set.slotMask(QUADRANTS[col]) & (1L << slot)) == 0) {
+            col++;
+        }
+        int row = counts[col]++;
+        cells[col][row] = slot;
+        rowOf[slot] = row;
+        colOf[slot] = col;
+        if (counts[col] > rows) {
+            rows = counts[col];
+            fireTableRowsInserted(row, row);
+        } else {
+            fireTableCellUpdated(row, col);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a prediction from the set and the table. The last prediction of the column moves into the freed cell.
+     *
+     * @param slot The slot to remove
+     * @return True if the slot was shown and has been removed
+     */
+    public boolean remove(int slot) {
+        if (set == null || slot < 0 || slot >= colOf.length || colOf[slot] == -1)
+            return false;
+        int col = colOf[slot];
+        int row = rowOf[slot];
+        int last = --counts[col];
+        set.remove(slot);
+        colOf[slot] = -1;
+        labels[0][slot] = null;
+        labels[1][slot] = null;
+        if (row != last) {
+            int moved = cells[col][last];
+            cells[col][row] = moved;
+            rowOf[moved] = row;
+            fireTableCellUpdated(row, col);
+        }
+        int oldRows = rows;
+        rows = longest();
+        if (rows < oldRows)
+            fireTableRowsDeleted(rows, oldRows - 1);
+        else
+            fireTableCellUpdated(last, col);
+        return true;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COL_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return COL_NAMES[col];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int col) {
+        return String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int col) {
+        return false;
+    }
+
+    /**
+     * Gets the coordinates shown in a cell in the form (x, z), the same as Coords
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        int slot = getSlotAt(row, col);
+        if (slot == -1)
+            return null;
+        String[] l = labels[nether ? 1 : 0];
+        String s = l[slot];
+        if (s == null) {
+            long e = set.get(slot);
+            s = "(" + (int) StrongholdSet.blockX(e, nether) + ", " + (int) StrongholdSet.blockZ(e, nether) + ")";
+            l[slot] = s;
+        }
+        return s;
+    }
+
+    //Gets the length of the longest column
+    private int longest() {
+        int max = 0;
+        for (int c : counts) {
+            max = Math.max(max, c);
+        }
+        return max;
+    }
+}